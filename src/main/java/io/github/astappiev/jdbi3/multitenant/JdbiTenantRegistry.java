@@ -1,35 +1,104 @@
 package io.github.astappiev.jdbi3.multitenant;
 
+import io.github.astappiev.jdbi3.multitenant.admission.AdmissionController;
+import io.github.astappiev.jdbi3.multitenant.batch.TenantWritePipeline;
+import io.github.astappiev.jdbi3.multitenant.cache.TenantQueryCache;
+import io.github.astappiev.jdbi3.multitenant.configuration.ConfigurationSnapshot;
 import io.github.astappiev.jdbi3.multitenant.configuration.DatabaseConfiguration;
 import io.github.astappiev.jdbi3.multitenant.configuration.DatabaseConfigurationException;
+import io.github.astappiev.jdbi3.multitenant.datasource.CatalogSwitchingDataSource;
+import io.github.astappiev.jdbi3.multitenant.datasource.LazyDataSource;
+import io.github.astappiev.jdbi3.multitenant.export.ExportOptions;
+import io.github.astappiev.jdbi3.multitenant.export.TenantRowPublisher;
+import io.github.astappiev.jdbi3.multitenant.pool.DemandPoolSizingStrategy;
+import io.github.astappiev.jdbi3.multitenant.pool.PoolResizer;
+import io.github.astappiev.jdbi3.multitenant.pool.PoolSizingStrategy;
+import io.github.astappiev.jdbi3.multitenant.pool.PoolStatistics;
+import io.github.astappiev.jdbi3.multitenant.profile.AccessFrequencySketch;
 import io.github.astappiev.jdbi3.multitenant.resolver.TenantResolver;
 import io.github.astappiev.jdbi3.multitenant.resolver.ThreadLocalTenantResolver;
+import io.github.astappiev.jdbi3.multitenant.shard.ShardCatalog;
 import org.jdbi.v3.core.Handle;
 import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.result.ResultIterable;
+import org.jdbi.v3.core.statement.Query;
+import org.jdbi.v3.core.statement.SqlStatements;
+import org.jdbi.v3.core.statement.StatementContext;
+import org.jdbi.v3.core.statement.StatementCustomizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-public class JdbiTenantRegistry {
+public class JdbiTenantRegistry implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(JdbiTenantRegistry.class);
-    private static JdbiTenantRegistry instance;
+    private static final AtomicReference<JdbiTenantRegistry> instance = new AtomicReference<>();
     private final TenantResolver currentTenantResolver;
     private final Function<DatabaseConfiguration, DataSource> dataSourceProvider;
     private final Function<String, DatabaseConfiguration> databaseConfigurationProvider;
     private final Function<Jdbi, Void> jdbiCustomizer;
     private final Predicate<Handle> optionalConnectionTester;
+    private final ShardCatalog shardCatalog;
+    private final ConfigurationSnapshot configurationSnapshot;
+    private final boolean lazyDataSource;
+    private final Duration dataSourceIdleTimeout;
+    private final AccessFrequencySketch accessSketch;
+    private final Path accessProfilePath;
+    private final int hotTenants;
+    private final Duration shutdownTimeout;
+    private final int shutdownParallelism;
+    private final PoolSizingStrategy poolSizingStrategy;
+    private final PoolResizer poolResizer;
+    private final Duration poolSizingInterval;
+    private final int maxTotalConnections;
+    private final ConcurrentMap<String, AppliedPoolSize> poolSizeMap;
+    private final AdmissionController admissionController;
+    private final TenantQueryCache queryCache;
+    private final Set<String> profiledTenants;
     private final ConcurrentMap<String, Jdbi> jdbiTenantMap;
+    private final ConcurrentMap<String, TenantConnectionFactory> connectionFactoryTenantMap;
+    private final Set<TenantConnectionFactory> retiredConnectionFactories;
+    private final ConcurrentMap<String, DataSource> dataSourceShardMap;
+    private final ConcurrentMap<String, DatabaseConfiguration> configurationTenantMap;
+    private final ScheduledExecutorService maintenanceExecutor;
+    private final ThreadLocal<TenantScope> currentScope;
+    private volatile boolean closed;
 
     private JdbiTenantRegistry(Initializer initializer) {
         currentTenantResolver = initializer.currentTenantResolver;
@@ -37,27 +106,179 @@ public class JdbiTenantRegistry {
         databaseConfigurationProvider = initializer.databaseConfigurationProvider;
         optionalConnectionTester = initializer.connectionTester;
         jdbiCustomizer = initializer.jdbiCustomizer;
+        shardCatalog = initializer.shardCatalog;
+        configurationSnapshot = initializer.configurationSnapshot;
+        lazyDataSource = initializer.lazyDataSource;
+        dataSourceIdleTimeout = initializer.dataSourceIdleTimeout;
+        accessSketch = initializer.accessProfiling ? new AccessFrequencySketch() : null;
+        accessProfilePath = initializer.accessProfilePath;
+        hotTenants = initializer.hotTenants;
+        shutdownTimeout = initializer.shutdownTimeout;
+        shutdownParallelism = initializer.shutdownParallelism;
+        poolSizingStrategy = initializer.poolSizingStrategy;
+        poolResizer = initializer.poolResizer;
+        poolSizingInterval = initializer.poolSizingInterval;
+        maxTotalConnections = initializer.maxTotalConnections;
+        poolSizeMap = new ConcurrentHashMap<>();
+        admissionController = initializer.admissionController;
+        queryCache = initializer.queryCache;
+        profiledTenants = ConcurrentHashMap.newKeySet();
         jdbiTenantMap = new ConcurrentHashMap<>();
+        connectionFactoryTenantMap = new ConcurrentHashMap<>();
+        retiredConnectionFactories = ConcurrentHashMap.newKeySet();
+        dataSourceShardMap = new ConcurrentHashMap<>();
+        configurationTenantMap = new ConcurrentHashMap<>();
+        currentScope = new ThreadLocal<>();
+
+        if (dataSourceIdleTimeout != null || configurationSnapshot != null || hotTenants > 0 || poolResizer != null) {
+            maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("jdbi-tenant-registry-maintenance"));
+        } else {
+            maintenanceExecutor = null;
+        }
     }
 
+    /**
+     * Load the persisted state and start the background work, once the registry is published
+     */
+    private void start() {
+        if (dataSourceIdleTimeout != null) {
+            long period = Math.max(1, dataSourceIdleTimeout.toMillis());
+            maintenanceExecutor.scheduleWithFixedDelay(this::releaseIdleDataSources, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        if (poolResizer != null) {
+            long period = Math.max(1, poolSizingInterval.toMillis());
+            maintenanceExecutor.scheduleWithFixedDelay(this::adjustPoolSizes, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        if (configurationSnapshot != null) {
+            try {
+                configurationTenantMap.putAll(configurationSnapshot.read());
+                logger.debug("Loaded {} tenant configurations from snapshot", configurationTenantMap.size());
+            } catch (RuntimeException e) {
+                // the snapshot only speeds up the cold start, the registry is published already and must not fail here
+                logger.warn("Ignoring configuration snapshot {}", configurationSnapshot.getPath(), e);
+            }
+            maintenanceExecutor.execute(this::reconcileConfigurationSnapshot);
+        }
+
+        if (accessSketch != null && accessProfilePath != null) {
+            importAccessProfile(accessProfilePath);
+        }
+        if (hotTenants > 0) {
+            maintenanceExecutor.execute(() -> warmUp(hotTenants));
+        }
+    }
+
+    /**
+     * Discard a registry which was never started, without persisting its empty state over the files of the started one
+     */
+    private void discard() {
+        closed = true;
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Get the default registry published by {@link Initializer#init()}
+     *
+     * @return The default registry, null if none is initialized
+     */
     public static JdbiTenantRegistry getInstance() {
-        return instance;
+        return instance.get();
     }
 
+    /**
+     * Release the singleton instance and close it
+     */
     public static void releaseInstance() {
-        instance = null;
+        JdbiTenantRegistry released = instance.getAndSet(null);
+        if (released != null) {
+            released.close();
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     public static Initializer newInitializer() {
         return new Initializer();
     }
 
-    private DatabaseConfiguration getDatabaseConfigurationForTenant(String tenantId) {
-        Optional<DatabaseConfiguration> optionalDatabaseConfiguration = Optional.ofNullable(databaseConfigurationProvider.apply(tenantId));
+    /**
+     * Get the {@link DatabaseConfiguration} for tenantId, either the dedicated one or the one derived from its shard
+     *
+     * @param tenantId The tenant id
+     * @return The tenant {@link DatabaseConfiguration}
+     */
+    public DatabaseConfiguration getDatabaseConfiguration(String tenantId) {
+        Optional<DatabaseConfiguration> optionalDatabaseConfiguration = getDedicatedDatabaseConfiguration(tenantId);
+        if (optionalDatabaseConfiguration.isEmpty() && shardCatalog != null) {
+            return shardCatalog.getTenantConfiguration(tenantId);
+        }
         return optionalDatabaseConfiguration.orElseThrow(() ->
             new DatabaseConfigurationException("Cannot find database configuration for tenant " + tenantId));
     }
 
+    private Optional<DatabaseConfiguration> getDedicatedDatabaseConfiguration(String tenantId) {
+        if (databaseConfigurationProvider == null) {
+            return Optional.empty();
+        }
+        if (configurationSnapshot == null) {
+            return Optional.ofNullable(databaseConfigurationProvider.apply(tenantId));
+        }
+
+        DatabaseConfiguration configuration = configurationTenantMap.get(tenantId);
+        if (configuration == null) {
+            configuration = databaseConfigurationProvider.apply(tenantId);
+            if (configuration != null) {
+                configurationTenantMap.put(tenantId, configuration);
+            }
+        }
+        return Optional.ofNullable(configuration);
+    }
+
+    private DataSource createDataSource(DatabaseConfiguration configuration) {
+        return lazyDataSource
+            ? new LazyDataSource(() -> dataSourceProvider.apply(configuration))
+            : dataSourceProvider.apply(configuration);
+    }
+
+    /**
+     * Create the {@link TenantConnectionFactory} for tenantId. A tenant without a dedicated database configuration shares the pool of its shard.
+     *
+     * @param tenantId The tenant id
+     * @return A new {@link TenantConnectionFactory}
+     */
+    private TenantConnectionFactory createConnectionFactory(String tenantId) {
+        Optional<DatabaseConfiguration> optionalDatabaseConfiguration = getDedicatedDatabaseConfiguration(tenantId);
+        if (optionalDatabaseConfiguration.isPresent()) {
+            DatabaseConfiguration configuration = optionalDatabaseConfiguration.get();
+            return new TenantConnectionFactory(tenantId, tenantId, createDataSource(configuration), configuration.getMinPoolSize(), configuration.getMaxPoolSize(),
+                configuration.getServerId(), admissionController, this::isClosed);
+        }
+        if (shardCatalog == null) {
+            throw new DatabaseConfigurationException("Cannot find database configuration for tenant " + tenantId);
+        }
+
+        String shardId = shardCatalog.getShardId(tenantId);
+        logger.debug("Mapping tenant {} to shard {}", tenantId, shardId);
+        DatabaseConfiguration shardConfiguration = shardCatalog.getShardConfiguration(shardId);
+        DataSource shardDataSource = dataSourceShardMap.computeIfAbsent(shardId, id -> createDataSource(shardConfiguration));
+        // pool size hints of a shard apply to the shard pool, not to each of its tenants
+        // the server capacity is shared with the dedicated tenants on the same server
+        return new TenantConnectionFactory(tenantId, "shard:" + shardId,
+            new CatalogSwitchingDataSource(shardDataSource, shardCatalog.getDatabaseName(tenantId), shardCatalog.isUseSchema()),
+            null, null, shardConfiguration.getServerId(), admissionController, this::isClosed);
+    }
+
     /**
      * Create a new {@link Jdbi} instance for tenantId
      *
@@ -66,10 +287,21 @@ public class JdbiTenantRegistry {
      */
     private Jdbi createJdbi(String tenantId) {
         logger.debug("Creating new jdbi for {}", tenantId);
-        Jdbi jdbi = Jdbi.create(dataSourceProvider.apply(getDatabaseConfigurationForTenant(tenantId)));
+        TenantConnectionFactory connectionFactory = createConnectionFactory(tenantId);
+        connectionFactoryTenantMap.put(tenantId, connectionFactory);
+        Jdbi jdbi = Jdbi.create(connectionFactory);
         if (jdbiCustomizer != null) {
             jdbiCustomizer.apply(jdbi);
         }
+        jdbi.setHandleScope(new TenantHandleScope(tenantId, jdbi, currentScope));
+        if (admissionController != null) {
+            jdbi.getConfig(SqlStatements.class).addCustomizer(new StatementCustomizer() {
+                @Override
+                public void beforeExecution(PreparedStatement stmt, StatementContext ctx) {
+                    admissionController.acquireQuery(tenantId);
+                }
+            });
+        }
         return jdbi;
     }
 
@@ -85,6 +317,527 @@ public class JdbiTenantRegistry {
         return currentTenantResolver;
     }
 
+    public ShardCatalog getShardCatalog() {
+        return shardCatalog;
+    }
+
+    /**
+     * Get the current number of shard pools
+     *
+     * @return The current number of shard {@link DataSource}s
+     */
+    public int getNumShardDataSources() {
+        return dataSourceShardMap.size();
+    }
+
+    public boolean isLazyDataSource() {
+        return lazyDataSource;
+    }
+
+    /**
+     * Release the pools of lazy tenant {@link DataSource}s which were idle for longer than the configured idle timeout.<br/>
+     * The tenant {@link Jdbi} instances stay valid, a released pool is re-created on the next connection request.
+     *
+     * @return The number of released pools
+     */
+    public int releaseIdleDataSources() {
+        if (!lazyDataSource || dataSourceIdleTimeout == null) {
+            return 0;
+        }
+
+        Map<String, DataSource> pools = new HashMap<>();
+        connectionFactoryTenantMap.forEach((tenantId, connectionFactory) -> pools.put(connectionFactory.getPoolId(), connectionFactory.getDataSource()));
+        dataSourceShardMap.forEach((shardId, dataSource) -> pools.put("shard:" + shardId, dataSource));
+
+        Set<String> retained = hotTenants > 0 ? new HashSet<>(getHotTenants(hotTenants)) : Set.of();
+        int released = 0;
+        for (Map.Entry<String, DataSource> entry : pools.entrySet()) {
+            String poolId = entry.getKey();
+            if (!(entry.getValue() instanceof LazyDataSource) || retained.contains(poolId)) {
+                continue;
+            }
+            try {
+                if (((LazyDataSource) entry.getValue()).releaseIfIdle(dataSourceIdleTimeout, () -> getNumActiveHandles(poolId))) {
+                    // the next pool starts with its configured size again
+                    poolSizeMap.remove(poolId);
+                    logger.debug("Released idle data source for {}", poolId);
+                    released++;
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to release idle data source for {}", poolId, e);
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Count the handles in use on a pool, over the tenants sharing it and the evicted tenants still draining from it
+     */
+    private int getNumActiveHandles(String poolId) {
+        int activeHandles = 0;
+        for (TenantConnectionFactory connectionFactory : connectionFactoryTenantMap.values()) {
+            if (connectionFactory.getPoolId().equals(poolId)) {
+                activeHandles += connectionFactory.getActiveHandles();
+            }
+        }
+        for (TenantConnectionFactory connectionFactory : retiredConnectionFactories) {
+            if (connectionFactory.getPoolId().equals(poolId)) {
+                activeHandles += connectionFactory.getActiveHandles();
+            }
+        }
+        return activeHandles;
+    }
+
+    /**
+     * Resize all pools to the demand observed since the previous adjustment.<br/>
+     * Each pool gets a recommendation from the pool sizing strategy. The statistics of the tenants of a shard are combined first,
+     * so the shard pool is sized once for its total demand, bounded by the pool size hints of the shard configuration.
+     * If the total exceeds the maximum number of connections, all pools are scaled down proportionally.
+     * Lazy pools which are not created yet are skipped.
+     *
+     * @return The applied sizes by tenant id (or "shard:" and shard id)
+     */
+    public Map<String, Integer> adjustPoolSizes() {
+        if (poolResizer == null) {
+            return Map.of();
+        }
+
+        Map<String, List<PoolStatistics>> statisticsPoolMap = new HashMap<>();
+        Map<String, DataSource> pools = new HashMap<>();
+        for (TenantConnectionFactory connectionFactory : connectionFactoryTenantMap.values()) {
+            // a tenant stays on the pool it was created with, even if the shard catalog maps it elsewhere by now
+            String poolId = connectionFactory.getPoolId();
+            DataSource dataSource = connectionFactory.getDataSource();
+            if (dataSource instanceof CatalogSwitchingDataSource) {
+                dataSource = ((CatalogSwitchingDataSource) dataSource).getDataSource();
+            }
+            if (dataSource instanceof LazyDataSource) {
+                dataSource = ((LazyDataSource) dataSource).peek();
+            }
+            statisticsPoolMap.computeIfAbsent(poolId, id -> new ArrayList<>()).add(connectionFactory.sample(getAppliedPoolSize(poolId, dataSource)));
+            pools.put(poolId, dataSource);
+        }
+
+        Map<String, Integer> sizes = new HashMap<>();
+        statisticsPoolMap.forEach((poolId, tenantStatistics) -> {
+            PoolStatistics statistics = tenantStatistics.get(0);
+            if (poolId.startsWith("shard:")) {
+                statistics = combineStatistics(poolId, tenantStatistics, shardCatalog.getShardConfiguration(poolId.substring("shard:".length())));
+            }
+            int recommendation = poolSizingStrategy.recommend(statistics);
+            logger.debug("Pool size recommendation for {} is {}, {}", poolId, recommendation, statistics);
+            sizes.put(poolId, recommendation);
+        });
+
+        int total = sizes.values().stream().mapToInt(Integer::intValue).sum();
+        if (maxTotalConnections > 0 && total > maxTotalConnections) {
+            sizes.replaceAll((poolId, size) -> (int) ((long) size * maxTotalConnections / total));
+        }
+        sizes.replaceAll((poolId, size) -> Math.max(1, size));
+
+        Map<String, Integer> applied = new HashMap<>();
+        sizes.forEach((poolId, size) -> {
+            DataSource dataSource = pools.get(poolId);
+            if (dataSource == null || getAppliedPoolSize(poolId, dataSource) == size) {
+                return;
+            }
+            try {
+                poolResizer.resize(dataSource, size);
+                poolSizeMap.put(poolId, new AppliedPoolSize(dataSource, size));
+                applied.put(poolId, size);
+                logger.debug("Resized pool of {} to {}", poolId, size);
+            } catch (Exception e) {
+                logger.error("Failed to resize pool of {}", poolId, e);
+            }
+        });
+        return applied;
+    }
+
+    /**
+     * Get the size last applied to a pool, or 0 if this pool instance was never resized, e.g. a released lazy pool built anew
+     */
+    private int getAppliedPoolSize(String poolId, DataSource dataSource) {
+        AppliedPoolSize applied = poolSizeMap.get(poolId);
+        return applied != null && applied.dataSource == dataSource ? applied.size : 0;
+    }
+
+    /**
+     * Combine the statistics of the tenants sharing a shard pool
+     */
+    private static PoolStatistics combineStatistics(String poolId, List<PoolStatistics> tenantStatistics, DatabaseConfiguration shardConfiguration) {
+        int activeHandles = 0;
+        int peakActiveHandles = 0;
+        long acquisitions = 0;
+        long waitNanos = 0;
+        Duration maxWait = Duration.ZERO;
+        for (PoolStatistics statistics : tenantStatistics) {
+            activeHandles += statistics.getActiveHandles();
+            peakActiveHandles += statistics.getPeakActiveHandles();
+            acquisitions += statistics.getAcquisitions();
+            waitNanos += statistics.getAverageWait().toNanos() * statistics.getAcquisitions();
+            if (statistics.getMaxWait().compareTo(maxWait) > 0) {
+                maxWait = statistics.getMaxWait();
+            }
+        }
+        return PoolStatistics.newBuilder()
+            .setTenantId(poolId)
+            .setActiveHandles(activeHandles)
+            .setPeakActiveHandles(peakActiveHandles)
+            .setAcquisitions(acquisitions)
+            .setAverageWait(Duration.ofNanos(acquisitions == 0 ? 0 : waitNanos / acquisitions))
+            .setMaxWait(maxWait)
+            .setCurrentSize(tenantStatistics.get(0).getCurrentSize())
+            .setMinPoolSize(shardConfiguration.getMinPoolSize())
+            .setMaxPoolSize(shardConfiguration.getMaxPoolSize())
+            .build();
+    }
+
+    /**
+     * Remove the cached {@link Jdbi} for tenantId and drop its cached query results. The evicted {@link Jdbi} refuses new handles,
+     * its {@link DataSource} is closed once the handles in use are closed.<br/>
+     * The next {@link JdbiTenantRegistry#getJdbi(String)} fetches the tenant configuration again and creates a new instance.
+     *
+     * @param tenantId The tenant id
+     * @return true if a cached instance was removed
+     */
+    public boolean evictJdbi(String tenantId) {
+        if (queryCache != null) {
+            queryCache.invalidateTenant(tenantId);
+        }
+        Jdbi[] evicted = new Jdbi[1];
+        TenantConnectionFactory[] retired = new TenantConnectionFactory[1];
+        // removing under the lock of the tenant entry keeps a concurrent getJdbi from creating the tenant in between
+        jdbiTenantMap.compute(tenantId, (id, jdbi) -> {
+            evicted[0] = jdbi;
+            configurationTenantMap.remove(id);
+            TenantConnectionFactory connectionFactory = connectionFactoryTenantMap.get(id);
+            if (connectionFactory != null) {
+                // retired before it is removed, so its handles in use are counted at any time
+                retiredConnectionFactories.add(connectionFactory);
+                connectionFactoryTenantMap.remove(id);
+            }
+            retired[0] = connectionFactory;
+            poolSizeMap.remove(id);
+            return null;
+        });
+
+        TenantConnectionFactory connectionFactory = retired[0];
+        if (connectionFactory != null) {
+            connectionFactory.retire(() -> {
+                retiredConnectionFactories.remove(connectionFactory);
+                try {
+                    closeDataSource(connectionFactory.getDataSource());
+                } catch (Exception e) {
+                    logger.error("Failed to close data source for tenant={}", tenantId, e);
+                }
+            });
+        }
+        if (evicted[0] != null) {
+            logger.debug("Evicted jdbi for {}", tenantId);
+        }
+        return evicted[0] != null;
+    }
+
+    /**
+     * Compare the configurations served from the snapshot with the live database configuration provider.<br/>
+     * Tenants with a changed configuration are evicted, then the snapshot is written again.
+     *
+     * @return The number of changed tenant configurations
+     */
+    public int reconcileConfigurationSnapshot() {
+        if (configurationSnapshot == null) {
+            return 0;
+        }
+
+        int changed = 0;
+        for (Map.Entry<String, DatabaseConfiguration> entry : configurationTenantMap.entrySet()) {
+            String tenantId = entry.getKey();
+            try {
+                DatabaseConfiguration live = databaseConfigurationProvider.apply(tenantId);
+                if (!entry.getValue().equals(live)) {
+                    logger.debug("Configuration of {} changed, evicting", tenantId);
+                    evictJdbi(tenantId);
+                    if (live != null) {
+                        configurationTenantMap.put(tenantId, live);
+                    }
+                    changed++;
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to reconcile configuration for tenant={}", tenantId, e);
+            }
+        }
+
+        saveConfigurationSnapshot();
+        return changed;
+    }
+
+    /**
+     * Write all known dedicated tenant configurations to the configuration snapshot
+     */
+    public void saveConfigurationSnapshot() {
+        if (configurationSnapshot == null) {
+            return;
+        }
+
+        try {
+            configurationSnapshot.write(new HashMap<>(configurationTenantMap));
+        } catch (DatabaseConfigurationException e) {
+            logger.error("Failed to write configuration snapshot {}", configurationSnapshot.getPath(), e);
+        }
+    }
+
+    private static void closeDataSource(DataSource dataSource) throws Exception {
+        if (dataSource instanceof AutoCloseable) {
+            ((AutoCloseable) dataSource).close();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Get the number of handles currently in use
+     *
+     * @return The number of open handles over all tenants, including the handles of evicted tenant {@link Jdbi}s
+     */
+    public int getNumActiveHandles() {
+        return connectionFactoryTenantMap.values().stream().mapToInt(TenantConnectionFactory::getActiveHandles).sum()
+            + retiredConnectionFactories.stream().mapToInt(TenantConnectionFactory::getActiveHandles).sum();
+    }
+
+    /**
+     * Shut down with the configured shutdown timeout
+     *
+     * @see JdbiTenantRegistry#shutdown(Duration)
+     */
+    @Override
+    public void close() {
+        shutdown(shutdownTimeout);
+    }
+
+    /**
+     * Shut down the registry. New handles are refused right away, then the registry waits up to timeout for the handles in use.
+     * After that all tenant and shard {@link DataSource}s are closed in parallel, again waiting up to timeout.<br/>
+     * Calling it again has no effect and returns an empty report.
+     *
+     * @param timeout The maximum time to wait for the handles in use, and then for closing the data sources
+     * @return The close times and failures of all data sources
+     */
+    public ShutdownReport shutdown(Duration timeout) {
+        synchronized (this) {
+            if (closed) {
+                return new ShutdownReport(0, Map.of(), Map.of());
+            }
+            closed = true;
+        }
+        logger.debug("Shutting down, {} tenants", connectionFactoryTenantMap.size());
+
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+        }
+        if (accessSketch != null) {
+            exportAccessProfile();
+        }
+        saveConfigurationSnapshot();
+
+        int abandonedHandles = awaitActiveHandles(timeout);
+        if (abandonedHandles > 0) {
+            logger.warn("Closing data sources with {} handles still in use", abandonedHandles);
+        }
+
+        Map<String, DataSource> dataSources = new HashMap<>();
+        connectionFactoryTenantMap.forEach((tenantId, connectionFactory) -> dataSources.put(tenantId, connectionFactory.getDataSource()));
+        for (TenantConnectionFactory connectionFactory : retiredConnectionFactories) {
+            // the evicted data source is closed here unless the last handle closes it concurrently
+            if (connectionFactory.drain()) {
+                dataSources.put("evicted:" + connectionFactory.getTenantId() + "@" + Integer.toHexString(System.identityHashCode(connectionFactory)),
+                    connectionFactory.getDataSource());
+            }
+        }
+        dataSourceShardMap.forEach((shardId, dataSource) -> dataSources.put("shard:" + shardId, dataSource));
+        ShutdownReport report = closeDataSources(dataSources, abandonedHandles, timeout);
+
+        jdbiTenantMap.clear();
+        connectionFactoryTenantMap.clear();
+        retiredConnectionFactories.clear();
+        dataSourceShardMap.clear();
+        if (queryCache != null) {
+            queryCache.invalidateAll();
+        }
+        logger.debug("Shut down, {}", report);
+        return report;
+    }
+
+    private int awaitActiveHandles(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        int activeHandles = getNumActiveHandles();
+        while (activeHandles > 0 && System.nanoTime() < deadline) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            activeHandles = getNumActiveHandles();
+        }
+        return activeHandles;
+    }
+
+    private ShutdownReport closeDataSources(Map<String, DataSource> dataSources, int abandonedHandles, Duration timeout) {
+        Map<String, Duration> closeTimes = new ConcurrentHashMap<>();
+        Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        if (dataSources.isEmpty()) {
+            return new ShutdownReport(abandonedHandles, closeTimes, failures);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(shutdownParallelism, dataSources.size()), daemonThreadFactory("jdbi-tenant-registry-shutdown"));
+        Map<String, Future<?>> futures = new HashMap<>();
+        dataSources.forEach((name, dataSource) -> futures.put(name, executor.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                closeDataSource(dataSource);
+            } catch (Exception e) {
+                logger.error("Failed to close data source for {}", name, e);
+                failures.put(name, e);
+            } finally {
+                closeTimes.put(name, Duration.ofNanos(System.nanoTime() - start));
+            }
+        })));
+        executor.shutdown();
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (Map.Entry<String, Future<?>> entry : futures.entrySet()) {
+            try {
+                entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                failures.putIfAbsent(entry.getKey(), e);
+            } catch (ExecutionException e) {
+                failures.putIfAbsent(entry.getKey(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.putIfAbsent(entry.getKey(), e);
+            }
+        }
+        executor.shutdownNow();
+        return new ShutdownReport(abandonedHandles, new HashMap<>(closeTimes), new HashMap<>(failures));
+    }
+
+    /**
+     * Get the estimated recent access frequency of a tenant, requires access profiling
+     *
+     * @param tenantId The tenant id
+     * @return The estimated number of recent {@link JdbiTenantRegistry#getJdbi(String)} calls, 0 if access profiling is disabled
+     */
+    public long getAccessFrequency(String tenantId) {
+        return accessSketch == null ? 0 : accessSketch.estimate(tenantId);
+    }
+
+    /**
+     * Get the most frequently accessed tenants, requires access profiling
+     *
+     * @param limit The maximum number of tenants
+     * @return The tenant ids, the hottest first
+     */
+    public List<String> getHotTenants(int limit) {
+        if (accessSketch == null) {
+            return List.of();
+        }
+
+        Set<String> candidates = new HashSet<>(profiledTenants);
+        candidates.addAll(jdbiTenantMap.keySet());
+        return candidates.stream()
+            .map(tenantId -> Map.entry(tenantId, accessSketch.estimate(tenantId)))
+            .filter(entry -> entry.getValue() > 0)
+            .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()))
+            .limit(limit)
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Create the {@link Jdbi} and open a connection for the hottest tenants, the hottest first
+     *
+     * @param limit The maximum number of tenants
+     * @return The number of warmed tenants
+     */
+    public int warmUp(int limit) {
+        int warmed = 0;
+        for (String tenantId : getHotTenants(limit)) {
+            try {
+                jdbiTenantMap.computeIfAbsent(tenantId, this::createJdbi).useHandle(Handle::getConnection);
+                logger.debug("Warmed up {}", tenantId);
+                warmed++;
+            } catch (RuntimeException e) {
+                logger.warn("Failed to warm up tenant={}", tenantId, e);
+            }
+        }
+        return warmed;
+    }
+
+    /**
+     * Write the access frequencies of all known tenants to the configured access profile path
+     */
+    public void exportAccessProfile() {
+        if (accessSketch != null && accessProfilePath != null) {
+            exportAccessProfile(accessProfilePath);
+        }
+    }
+
+    /**
+     * Write the access frequencies of all known tenants, to be imported on the next start
+     *
+     * @param path The file to write
+     */
+    public void exportAccessProfile(Path path) {
+        if (accessSketch == null) {
+            throw new IllegalStateException("Access profiling is disabled");
+        }
+
+        Properties profile = new Properties();
+        for (String tenantId : getHotTenants(Integer.MAX_VALUE)) {
+            profile.setProperty(tenantId, Long.toString(accessSketch.estimate(tenantId)));
+        }
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            profile.store(writer, "Tenant access frequencies");
+        } catch (IOException e) {
+            logger.error("Failed to export access profile {}", path, e);
+        }
+    }
+
+    /**
+     * Seed the access frequencies from a previously exported profile
+     *
+     * @param path The file to read
+     */
+    public void importAccessProfile(Path path) {
+        if (accessSketch == null) {
+            throw new IllegalStateException("Access profiling is disabled");
+        }
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        Properties profile = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            profile.load(reader);
+        } catch (IOException e) {
+            logger.error("Failed to import access profile {}", path, e);
+            return;
+        }
+        Map<String, Long> counts = new HashMap<>();
+        for (String tenantId : profile.stringPropertyNames()) {
+            try {
+                counts.put(tenantId, Long.parseLong(profile.getProperty(tenantId)));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring access profile entry for tenant={}", tenantId);
+            }
+        }
+        accessSketch.seed(counts);
+        profiledTenants.addAll(counts.keySet());
+        logger.debug("Imported access profile of {} tenants", profiledTenants.size());
+    }
+
     /**
      * Get the current number of cached {@link Jdbi} instances
      *
@@ -121,9 +874,95 @@ public class JdbiTenantRegistry {
      * @return A cached {@link Jdbi} instance for tenantId
      */
     public Jdbi getJdbi(String tenantId) {
+        if (closed) {
+            throw new IllegalStateException("JdbiTenantRegistry is closed");
+        }
+        if (accessSketch != null) {
+            accessSketch.increment(tenantId);
+        }
         return jdbiTenantMap.computeIfAbsent(tenantId, this::createJdbi);
     }
 
+    /**
+     * Open a {@link TenantScope} on the current thread. Inside the scope, all handle callbacks of a tenant {@link Jdbi} share one {@link Handle}.
+     * Joins the open scope if there is one already.
+     *
+     * <pre>{@code
+     * try (TenantScope scope = registry.openScope()) {
+     *     registry.getJdbi().useHandle(...);
+     *     registry.getJdbi().withHandle(...); // reuses the handle
+     * }
+     * }</pre>
+     *
+     * @return The scope of the current thread, must be closed by the same thread
+     */
+    public TenantScope openScope() {
+        if (closed) {
+            throw new IllegalStateException("JdbiTenantRegistry is closed");
+        }
+        TenantScope scope = currentScope.get();
+        if (scope != null) {
+            scope.join();
+            return scope;
+        }
+        scope = new TenantScope(currentScope);
+        currentScope.set(scope);
+        return scope;
+    }
+
+    /**
+     * Stream the rows of a query over many tenants, reading a few tenants at a time and only as fast as the subscriber requests rows.
+     *
+     * @param tenantIds The tenants to read, in this order
+     * @param query     The query of a tenant handle, e.g. {@code handle -> handle.createQuery("select * from orders").mapToBean(Order.class)}
+     * @param options   The fetch size, the number of tenants read at the same time and the executor
+     * @param <T>       The type of the mapped row
+     * @return A {@link java.util.concurrent.Flow.Publisher} of the rows, every subscription runs the export again
+     * @see TenantRowPublisher
+     */
+    public <T> TenantRowPublisher<T> export(Collection<String> tenantIds, Function<Handle, ResultIterable<T>> query, ExportOptions options) {
+        return new TenantRowPublisher<>(this::getJdbi, tenantIds, query, options);
+    }
+
+    /**
+     * Create a builder of a {@link TenantWritePipeline} writing through the tenant {@link Jdbi}s of this registry
+     *
+     * @return A builder with the {@link Jdbi} provider set
+     */
+    public TenantWritePipeline.Builder newWritePipeline() {
+        return TenantWritePipeline.newBuilder().setJdbiProvider(this::getJdbi);
+    }
+
+    /**
+     * Get the query cache
+     *
+     * @return The query cache, null if not configured
+     */
+    public TenantQueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Get the cached result of a query of tenantId, or run it and cache it
+     *
+     * @param tenantId   The tenant id
+     * @param sql        The SQL of the query
+     * @param parameters The named parameters to bind
+     * @param rowType    The type of the rows, part of the cache key
+     * @param mapper     Maps the query to its rows, e.g. {@code query -> query.mapTo(String.class)}
+     * @param tags       The tags (e.g. table names) the result can be invalidated by
+     * @param <T>        The type of the rows
+     * @return The unmodifiable result
+     * @throws IllegalStateException if no query cache is configured
+     */
+    public <T> List<T> queryCached(String tenantId, String sql, Map<String, ?> parameters, Class<T> rowType,
+                                   Function<Query, ResultIterable<T>> mapper, String... tags) {
+        if (queryCache == null) {
+            throw new IllegalStateException("Query cache is not configured");
+        }
+        return queryCache.query(tenantId, getJdbi(tenantId), sql, parameters, rowType, mapper, tags);
+    }
+
     /**
      * Performs a check on all cached {@link Jdbi} instances
      *
@@ -140,9 +979,14 @@ public class JdbiTenantRegistry {
      * @return true if the test was successful.
      */
     public boolean checkHandle(String tenantId) {
+        // only the resolver of this registry is switched, other registries and the default singleton are not affected
+        ThreadLocalTenantResolver threadLocalResolver = currentTenantResolver instanceof ThreadLocalTenantResolver
+            ? (ThreadLocalTenantResolver) currentTenantResolver : null;
         String currentTenant = currentTenantResolver.get();
         try {
-            ThreadLocalTenantResolver.getInstance().setCurrentTenant(tenantId);
+            if (threadLocalResolver != null) {
+                threadLocalResolver.setCurrentTenant(tenantId);
+            }
             return getJdbi(tenantId).withHandle(h -> Optional.ofNullable(optionalConnectionTester).orElse(h1 -> {
                 try {
                     return h.getConnection().isValid(3);
@@ -155,7 +999,19 @@ public class JdbiTenantRegistry {
             logger.error("Unexpected exception on checkHandle for tenant={}", tenantId, e);
             return false;
         } finally {
-            ThreadLocalTenantResolver.getInstance().setCurrentTenant(currentTenant);
+            if (threadLocalResolver != null) {
+                threadLocalResolver.setCurrentTenant(currentTenant);
+            }
+        }
+    }
+
+    private static final class AppliedPoolSize {
+        private final DataSource dataSource;
+        private final int size;
+
+        private AppliedPoolSize(DataSource dataSource, int size) {
+            this.dataSource = dataSource;
+            this.size = size;
         }
     }
 
@@ -165,6 +1021,21 @@ public class JdbiTenantRegistry {
         private Function<String, DatabaseConfiguration> databaseConfigurationProvider;
         private Function<Jdbi, Void> jdbiCustomizer;
         private Predicate<Handle> connectionTester;
+        private ShardCatalog shardCatalog;
+        private ConfigurationSnapshot configurationSnapshot;
+        private boolean lazyDataSource;
+        private Duration dataSourceIdleTimeout;
+        private boolean accessProfiling;
+        private Path accessProfilePath;
+        private int hotTenants;
+        private Duration shutdownTimeout = Duration.ofSeconds(30);
+        private int shutdownParallelism = 4;
+        private PoolSizingStrategy poolSizingStrategy;
+        private PoolResizer poolResizer;
+        private Duration poolSizingInterval = Duration.ofMinutes(1);
+        private int maxTotalConnections;
+        private AdmissionController admissionController;
+        private TenantQueryCache queryCache;
 
         private Initializer() {
         }
@@ -194,17 +1065,186 @@ public class JdbiTenantRegistry {
             return this;
         }
 
+        /**
+         * Set the shard catalog. Tenants without a dedicated database configuration are mapped to a shard and share its pool.
+         */
+        public Initializer setShardCatalog(ShardCatalog shardCatalog) {
+            this.shardCatalog = shardCatalog;
+            return this;
+        }
+
+        /**
+         * Set the configuration snapshot. Tenant configurations are served from the snapshot on start
+         * and reconciled with the database configuration provider in the background.
+         */
+        public Initializer setConfigurationSnapshot(ConfigurationSnapshot configurationSnapshot) {
+            this.configurationSnapshot = configurationSnapshot;
+            return this;
+        }
+
+        /**
+         * Create the tenant {@link DataSource} on the first connection request instead of on {@link JdbiTenantRegistry#getJdbi(String)}.
+         */
+        public Initializer setLazyDataSource(boolean lazyDataSource) {
+            this.lazyDataSource = lazyDataSource;
+            return this;
+        }
+
+        /**
+         * Release the pool of a lazy tenant {@link DataSource} after it was idle for the given time. Requires lazy data sources.
+         */
+        public Initializer setDataSourceIdleTimeout(Duration dataSourceIdleTimeout) {
+            this.dataSourceIdleTimeout = dataSourceIdleTimeout;
+            return this;
+        }
+
+        /**
+         * Keep a decaying access frequency sketch of tenants, updated on every {@link JdbiTenantRegistry#getJdbi(String)}.
+         */
+        public Initializer setAccessProfiling(boolean accessProfiling) {
+            this.accessProfiling = accessProfiling;
+            return this;
+        }
+
+        /**
+         * Set the file the access profile is imported from on start and can be exported to. Requires access profiling.
+         */
+        public Initializer setAccessProfilePath(Path accessProfilePath) {
+            this.accessProfilePath = accessProfilePath;
+            return this;
+        }
+
+        /**
+         * Set the number of hottest tenants which are warmed up on start and never released as idle. Requires access profiling.
+         */
+        public Initializer setHotTenants(int hotTenants) {
+            this.hotTenants = hotTenants;
+            return this;
+        }
+
+        /**
+         * Set the time {@link JdbiTenantRegistry#close()} waits for handles in use, and then for closing the data sources. Defaults to 30 seconds.
+         */
+        public Initializer setShutdownTimeout(Duration shutdownTimeout) {
+            this.shutdownTimeout = shutdownTimeout;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of data sources which are closed concurrently on shutdown. Defaults to 4.
+         */
+        public Initializer setShutdownParallelism(int shutdownParallelism) {
+            this.shutdownParallelism = shutdownParallelism;
+            return this;
+        }
+
+        /**
+         * Set the strategy recommending pool sizes from the observed demand. Defaults to {@link DemandPoolSizingStrategy}.
+         */
+        public Initializer setPoolSizingStrategy(PoolSizingStrategy poolSizingStrategy) {
+            this.poolSizingStrategy = poolSizingStrategy;
+            return this;
+        }
+
+        /**
+         * Set the callback resizing a pool. Pools are only resized when it is set.
+         */
+        public Initializer setPoolResizer(PoolResizer poolResizer) {
+            this.poolResizer = poolResizer;
+            return this;
+        }
+
+        /**
+         * Set the interval of pool resizing. Defaults to 1 minute.
+         */
+        public Initializer setPoolSizingInterval(Duration poolSizingInterval) {
+            this.poolSizingInterval = poolSizingInterval;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of connections over all pools, pools are scaled down proportionally above it. Defaults to unlimited.
+         */
+        public Initializer setMaxTotalConnections(int maxTotalConnections) {
+            this.maxTotalConnections = maxTotalConnections;
+            return this;
+        }
+
+        /**
+         * Set the admission controller limiting the statements and handles of tenants. Defaults to none, tenants are not limited.
+         */
+        public Initializer setAdmissionController(AdmissionController admissionController) {
+            this.admissionController = admissionController;
+            return this;
+        }
+
+        /**
+         * Set the cache of query results used by {@link JdbiTenantRegistry#queryCached}. Defaults to none.
+         */
+        public Initializer setQueryCache(TenantQueryCache queryCache) {
+            this.queryCache = queryCache;
+            return this;
+        }
+
+        /**
+         * Create a new registry, independent of the default one and of any other registry.<br/>
+         * It has its own tenant {@link Jdbi} instances and data sources, the caller is responsible for closing it.
+         *
+         * @return A new registry
+         */
+        public JdbiTenantRegistry build() {
+            validate();
+            JdbiTenantRegistry registry = new JdbiTenantRegistry(this);
+            registry.start();
+            return registry;
+        }
+
+        /**
+         * Create the registry and publish it as the default one, returned by {@link JdbiTenantRegistry#getInstance()}
+         *
+         * @return The default registry
+         * @throws IllegalStateException if a default registry is already initialized
+         */
         public JdbiTenantRegistry init() {
-            if (instance == null) {
-                Objects.requireNonNull(currentTenantResolver); // Current tenant resolver is required.
-                Objects.requireNonNull(databaseConfigurationProvider); // Database configuration provider is required.
-                Objects.requireNonNull(dataSourceProvider); // Data source provider is required.
-                instance = new JdbiTenantRegistry(this);
-            } else {
+            if (instance.get() != null) {
                 throw new IllegalStateException("JdbiTenantRegistry already initialized");
             }
+            validate();
+            JdbiTenantRegistry registry = new JdbiTenantRegistry(this);
+            if (!instance.compareAndSet(null, registry)) {
+                // lost the race against a concurrent initialization, nothing was started or loaded yet
+                registry.discard();
+                throw new IllegalStateException("JdbiTenantRegistry already initialized");
+            }
+            registry.start();
+            return registry;
+        }
 
-            return instance;
+        private void validate() {
+            Objects.requireNonNull(currentTenantResolver); // Current tenant resolver is required.
+            if (shardCatalog == null) {
+                Objects.requireNonNull(databaseConfigurationProvider); // Database configuration provider or shard catalog is required.
+            }
+            Objects.requireNonNull(dataSourceProvider); // Data source provider is required.
+            Objects.requireNonNull(shutdownTimeout); // Shutdown timeout is required.
+            if (poolResizer != null) {
+                Objects.requireNonNull(poolSizingInterval); // Pool sizing interval is required.
+                if (poolSizingStrategy == null) {
+                    poolSizingStrategy = DemandPoolSizingStrategy.newBuilder().build();
+                }
+            }
+            if (shutdownParallelism < 1) {
+                throw new IllegalArgumentException("Shutdown parallelism must be positive");
+            }
+            if (configurationSnapshot != null) {
+                Objects.requireNonNull(databaseConfigurationProvider); // Configuration snapshot requires a database configuration provider.
+            }
+            if ((accessProfilePath != null || hotTenants > 0) && !accessProfiling) {
+                throw new IllegalStateException("Access profile path and hot tenants require access profiling");
+            }
+            if (dataSourceIdleTimeout != null && !lazyDataSource) {
+                throw new IllegalStateException("Data source idle timeout requires lazy data sources");
+            }
         }
     }
 }
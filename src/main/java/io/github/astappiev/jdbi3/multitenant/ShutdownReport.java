@@ -0,0 +1,59 @@
+package io.github.astappiev.jdbi3.multitenant;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The outcome of {@link JdbiTenantRegistry#shutdown(Duration)}
+ */
+public final class ShutdownReport {
+
+    private final int abandonedHandles;
+    private final Map<String, Duration> closeTimes;
+    private final Map<String, Throwable> failures;
+
+    ShutdownReport(int abandonedHandles, Map<String, Duration> closeTimes, Map<String, Throwable> failures) {
+        this.abandonedHandles = abandonedHandles;
+        this.closeTimes = Collections.unmodifiableMap(closeTimes);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return The number of handles which were still in use when the drain timeout elapsed
+     */
+    public int getAbandonedHandles() {
+        return abandonedHandles;
+    }
+
+    /**
+     * @return The time it took to close each {@link javax.sql.DataSource}, by tenant id (or "shard:" and shard id, or "evicted:" and tenant id)
+     */
+    public Map<String, Duration> getCloseTimes() {
+        return closeTimes;
+    }
+
+    /**
+     * @return The failures of closing a {@link javax.sql.DataSource}, by tenant id (or "shard:" and shard id, or "evicted:" and tenant id).
+     * A {@link java.util.concurrent.TimeoutException} is reported when closing did not finish in time.
+     */
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return true when all handles were drained and all data sources closed without failures
+     */
+    public boolean isClean() {
+        return abandonedHandles == 0 && failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ShutdownReport{" +
+            "abandonedHandles=" + abandonedHandles +
+            ", closeTimes=" + closeTimes +
+            ", failures=" + failures.keySet() +
+            '}';
+    }
+}
@@ -0,0 +1,183 @@
+package io.github.astappiev.jdbi3.multitenant;
+
+import io.github.astappiev.jdbi3.multitenant.admission.AdmissionController;
+import io.github.astappiev.jdbi3.multitenant.pool.PoolStatistics;
+import org.jdbi.v3.core.ConnectionFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The {@link ConnectionFactory} of a tenant {@link org.jdbi.v3.core.Jdbi}, which counts the handles in use,
+ * observes the time it takes to borrow a connection and refuses new handles once the registry is closing,
+ * the factory is retired or the {@link AdmissionController} does not admit them.
+ */
+final class TenantConnectionFactory implements ConnectionFactory {
+
+    private final String tenantId;
+    private final String poolId;
+    private final DataSource dataSource;
+    private final Integer minPoolSize;
+    private final Integer maxPoolSize;
+    private final String serverId;
+    private final AdmissionController admissionController;
+    private final BooleanSupplier closing;
+    private final AtomicInteger activeHandles;
+    private final AtomicInteger peakActiveHandles;
+    private final LongAdder acquisitions;
+    private final LongAdder waitNanos;
+    private final AtomicLong maxWaitNanos;
+    private final AtomicBoolean drained;
+    private volatile Runnable onDrained;
+
+    TenantConnectionFactory(String tenantId, String poolId, DataSource dataSource, Integer minPoolSize, Integer maxPoolSize,
+                            String serverId, AdmissionController admissionController, BooleanSupplier closing) {
+        this.tenantId = tenantId;
+        this.poolId = poolId;
+        this.dataSource = dataSource;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.serverId = serverId;
+        this.admissionController = admissionController;
+        this.closing = closing;
+        this.activeHandles = new AtomicInteger();
+        this.peakActiveHandles = new AtomicInteger();
+        this.acquisitions = new LongAdder();
+        this.waitNanos = new LongAdder();
+        this.maxWaitNanos = new AtomicLong();
+        this.drained = new AtomicBoolean();
+    }
+
+    String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * @return The id of the pool the connections are borrowed from, the tenant id or "shard:" and the shard id
+     * the tenant was mapped to when the factory was created
+     */
+    String getPoolId() {
+        return poolId;
+    }
+
+    DataSource getDataSource() {
+        return dataSource;
+    }
+
+    String getServerId() {
+        return serverId;
+    }
+
+    int getActiveHandles() {
+        return activeHandles.get();
+    }
+
+    /**
+     * Refuse new handles and run onDrained once all handles in use are closed, right away if there are none
+     *
+     * @param onDrained Called at most once, by the thread closing the last handle or by this one
+     */
+    void retire(Runnable onDrained) {
+        this.onDrained = onDrained;
+        if (activeHandles.get() == 0) {
+            runOnDrained();
+        }
+    }
+
+    /**
+     * Mark the factory as drained without running the callback of {@link TenantConnectionFactory#retire(Runnable)}
+     *
+     * @return true if the callback did not run yet and will not run anymore
+     */
+    boolean drain() {
+        return drained.compareAndSet(false, true);
+    }
+
+    private void runOnDrained() {
+        Runnable callback = onDrained;
+        if (callback != null && drain()) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Take the statistics observed since the previous sample and start a new sampling window
+     *
+     * @param currentSize The last size applied to the pool
+     * @return The statistics of the ended window
+     */
+    PoolStatistics sample(int currentSize) {
+        int active = activeHandles.get();
+        long count = acquisitions.sumThenReset();
+        long wait = waitNanos.sumThenReset();
+        return PoolStatistics.newBuilder()
+            .setTenantId(tenantId)
+            .setActiveHandles(active)
+            .setPeakActiveHandles(Math.max(active, peakActiveHandles.getAndSet(active)))
+            .setAcquisitions(count)
+            .setAverageWait(Duration.ofNanos(count == 0 ? 0 : wait / count))
+            .setMaxWait(Duration.ofNanos(maxWaitNanos.getAndSet(0)))
+            .setCurrentSize(currentSize)
+            .setMinPoolSize(minPoolSize)
+            .setMaxPoolSize(maxPoolSize)
+            .build();
+    }
+
+    @Override
+    public Connection openConnection() throws SQLException {
+        // the counter must be incremented before the closing flag is read, see JdbiTenantRegistry#shutdown,
+        // and before the connection is requested, see LazyDataSource#releaseIfIdle
+        int active = activeHandles.incrementAndGet();
+        boolean admitted = false;
+        try {
+            if (closing.getAsBoolean()) {
+                throw new SQLException("JdbiTenantRegistry is closed, cannot open a handle for tenant " + tenantId);
+            }
+            if (onDrained != null) {
+                throw new SQLException("Jdbi of tenant " + tenantId + " was evicted, get a new one from the JdbiTenantRegistry");
+            }
+            if (admissionController != null) {
+                admissionController.acquireHandle(tenantId, serverId);
+                admitted = true;
+            }
+            peakActiveHandles.accumulateAndGet(active, Math::max);
+
+            long start = System.nanoTime();
+            Connection connection = dataSource.getConnection();
+            long wait = System.nanoTime() - start;
+            acquisitions.increment();
+            waitNanos.add(wait);
+            maxWaitNanos.accumulateAndGet(wait, Math::max);
+            return connection;
+        } catch (SQLException | RuntimeException | Error e) {
+            if (admitted) {
+                admissionController.releaseHandle(tenantId, serverId);
+            }
+            if (activeHandles.decrementAndGet() == 0 && onDrained != null) {
+                runOnDrained();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        try {
+            connection.close();
+        } finally {
+            if (admissionController != null) {
+                admissionController.releaseHandle(tenantId, serverId);
+            }
+            if (activeHandles.decrementAndGet() == 0 && onDrained != null) {
+                runOnDrained();
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package io.github.astappiev.jdbi3.multitenant;
+
+import org.jdbi.v3.core.HandleScope;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.extension.HandleSupplier;
+
+/**
+ * The {@link HandleScope} of a tenant {@link Jdbi}, which hands out the handle pinned in the {@link TenantScope} of the current thread.
+ * Without an open scope it behaves like the handle scope it wraps.
+ */
+final class TenantHandleScope implements HandleScope {
+
+    private final String tenantId;
+    private final Jdbi jdbi;
+    private final HandleScope delegate;
+    private final ThreadLocal<TenantScope> currentScope;
+
+    TenantHandleScope(String tenantId, Jdbi jdbi, ThreadLocal<TenantScope> currentScope) {
+        this.tenantId = tenantId;
+        this.jdbi = jdbi;
+        this.delegate = jdbi.getHandleScope();
+        this.currentScope = currentScope;
+    }
+
+    @Override
+    public HandleSupplier get() {
+        HandleSupplier handleSupplier = delegate.get();
+        if (handleSupplier != null) {
+            return handleSupplier;
+        }
+        TenantScope scope = currentScope.get();
+        return scope == null ? null : scope.getHandleSupplier(tenantId, jdbi);
+    }
+
+    @Override
+    public void set(HandleSupplier handleSupplier) {
+        delegate.set(handleSupplier);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+}
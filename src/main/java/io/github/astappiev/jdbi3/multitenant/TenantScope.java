@@ -0,0 +1,125 @@
+package io.github.astappiev.jdbi3.multitenant;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.HandleScope;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.extension.HandleSupplier;
+import org.jdbi.v3.core.statement.SqlStatements;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A unit of work on the current thread, opened by {@link JdbiTenantRegistry#openScope()}.<br/>
+ * The first {@link Jdbi#withHandle}, {@link Jdbi#useHandle} or {@link Jdbi#inTransaction} of a tenant inside the scope opens a {@link Handle},
+ * all further calls for that tenant reuse it. The handles are closed when the scope is closed.
+ * Opening a scope while another one is open on the same thread joins the outer scope.
+ */
+public final class TenantScope implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantScope.class);
+    private final ThreadLocal<TenantScope> currentScope;
+    private final Thread thread;
+    private final Map<String, HandleSupplier> handleTenantMap;
+    private int depth;
+
+    TenantScope(ThreadLocal<TenantScope> currentScope) {
+        this.currentScope = currentScope;
+        this.thread = Thread.currentThread();
+        this.handleTenantMap = new LinkedHashMap<>();
+        this.depth = 1;
+    }
+
+    void join() {
+        depth++;
+    }
+
+    /**
+     * Get the handle of tenantId in this scope, opens it on first use
+     *
+     * @param tenantId The tenant id
+     * @param jdbi     The {@link Jdbi} of the tenant
+     * @return The {@link HandleSupplier} of the pinned handle
+     */
+    HandleSupplier getHandleSupplier(String tenantId, Jdbi jdbi) {
+        HandleSupplier handleSupplier = handleTenantMap.get(tenantId);
+        if (handleSupplier == null) {
+            Handle handle = jdbi.open();
+            // same as Jdbi#withHandle, statements of callbacks are cleaned up with the handle
+            SqlStatements sqlStatements = handle.getConfig(SqlStatements.class);
+            sqlStatements.setAttachAllStatementsForCleanup(sqlStatements.isAttachCallbackStatementsForCleanup());
+
+            // Jdbi does not expose its supplier of a constant handle, let a scope create it
+            HandleScope capturingScope = new CapturingHandleScope();
+            capturingScope.set(handle);
+            handleSupplier = capturingScope.get();
+            handleTenantMap.put(tenantId, handleSupplier);
+            logger.debug("Pinned handle for {}", tenantId);
+        }
+        return handleSupplier;
+    }
+
+    /**
+     * Get the number of handles opened in this scope
+     *
+     * @return The number of tenants touched in this scope
+     */
+    public int getNumHandles() {
+        return handleTenantMap.size();
+    }
+
+    /**
+     * Close the scope. The handles are closed when the outermost scope is closed.
+     *
+     * @throws IllegalStateException if called from another thread than the one which opened the scope
+     */
+    @Override
+    public void close() {
+        if (Thread.currentThread() != thread) {
+            throw new IllegalStateException("TenantScope must be closed by the thread which opened it");
+        }
+        if (depth == 0 || --depth > 0) {
+            return;
+        }
+
+        currentScope.remove();
+        RuntimeException failure = null;
+        for (Map.Entry<String, HandleSupplier> entry : handleTenantMap.entrySet()) {
+            try {
+                entry.getValue().getHandle().close();
+            } catch (RuntimeException e) {
+                logger.error("Failed to close handle for {}", entry.getKey(), e);
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        handleTenantMap.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static final class CapturingHandleScope implements HandleScope {
+        private HandleSupplier handleSupplier;
+
+        @Override
+        public HandleSupplier get() {
+            return handleSupplier;
+        }
+
+        @Override
+        public void set(HandleSupplier handleSupplier) {
+            this.handleSupplier = handleSupplier;
+        }
+
+        @Override
+        public void clear() {
+            handleSupplier = null;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package io.github.astappiev.jdbi3.multitenant.admission;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Admission control for tenants sharing database servers.<br/>
+ * Each tenant has a token bucket for statements per second and a limit of concurrent handles, both updated with CAS only.
+ * When a server capacity is set, the handles of all tenants on a server are bounded by it and, once it is reached,
+ * admitted by weighted fair queuing. Rejections throw {@link TenantAdmissionException} and are counted per tenant and reason.
+ */
+public class AdmissionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+    private final Function<String, TenantLimits> limitsProvider;
+    private final int serverCapacity;
+    private final long maxQueueWaitNanos;
+    private final Consumer<TenantAdmissionException> rejectionListener;
+    private final ConcurrentMap<String, TenantState> tenantStateMap;
+    private final ConcurrentMap<String, ServerQueue> serverQueueMap;
+    private final Map<TenantAdmissionException.Reason, LongAdder> rejectionReasonMap;
+
+    private AdmissionController(Builder builder) {
+        TenantLimits defaultLimits = builder.defaultLimits;
+        Function<String, TenantLimits> provider = builder.limitsProvider;
+        limitsProvider = provider == null ? tenantId -> defaultLimits
+            : tenantId -> Optional.ofNullable(provider.apply(tenantId)).orElse(defaultLimits);
+        serverCapacity = builder.serverCapacity;
+        maxQueueWaitNanos = builder.maxQueueWait.toNanos();
+        rejectionListener = builder.rejectionListener;
+        tenantStateMap = new ConcurrentHashMap<>();
+        serverQueueMap = new ConcurrentHashMap<>();
+        rejectionReasonMap = new EnumMap<>(TenantAdmissionException.Reason.class);
+        for (TenantAdmissionException.Reason reason : TenantAdmissionException.Reason.values()) {
+            rejectionReasonMap.put(reason, new LongAdder());
+        }
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    private TenantState getTenantState(String tenantId) {
+        TenantState state = tenantStateMap.get(tenantId);
+        if (state == null) {
+            state = tenantStateMap.computeIfAbsent(tenantId, id -> new TenantState(limitsProvider.apply(id)));
+        }
+        return state;
+    }
+
+    /**
+     * Get the limits in effect for tenantId
+     *
+     * @param tenantId The tenant id
+     * @return The limits of the tenant
+     */
+    public TenantLimits getLimits(String tenantId) {
+        return getTenantState(tenantId).limits;
+    }
+
+    /**
+     * Replace the limits of tenantId. Takes effect for the next statement or handle of the tenant.
+     *
+     * @param tenantId The tenant id
+     * @param limits   The new limits
+     */
+    public void setLimits(String tenantId, TenantLimits limits) {
+        Objects.requireNonNull(limits, "Limits are required");
+        getTenantState(tenantId).limits = limits;
+        logger.debug("Updated limits of {} to {}", tenantId, limits);
+    }
+
+    /**
+     * Admit a statement of tenantId
+     *
+     * @param tenantId The tenant id
+     * @throws TenantAdmissionException if the tenant exceeded its statements per second
+     */
+    public void acquireQuery(String tenantId) {
+        if (!getTenantState(tenantId).tryAcquireQuery(System.nanoTime())) {
+            reject(tenantId, TenantAdmissionException.Reason.RATE_LIMITED);
+        }
+    }
+
+    /**
+     * Admit a handle of tenantId on serverId. Waits in the fair queue of the server when it has no capacity.
+     * Every admitted handle must be released with {@link AdmissionController#releaseHandle(String, String)}.
+     *
+     * @param tenantId The tenant id
+     * @param serverId The id of the database server of the tenant
+     * @throws TenantAdmissionException if the tenant exceeded its concurrent handles or the server had no capacity in time
+     */
+    public void acquireHandle(String tenantId, String serverId) {
+        TenantState state = getTenantState(tenantId);
+        TenantLimits limits = state.limits;
+        if (!state.tryAcquireHandle(limits)) {
+            reject(tenantId, TenantAdmissionException.Reason.CONCURRENCY_LIMITED);
+        }
+        if (serverCapacity > 0) {
+            ServerQueue serverQueue = serverQueueMap.computeIfAbsent(serverId, id -> new ServerQueue(serverCapacity));
+            if (!serverQueue.acquire(tenantId, limits.getWeight(), maxQueueWaitNanos)) {
+                state.activeHandles.decrementAndGet();
+                reject(tenantId, TenantAdmissionException.Reason.QUEUE_TIMEOUT);
+            }
+        }
+    }
+
+    /**
+     * Release a handle admitted by {@link AdmissionController#acquireHandle(String, String)}
+     *
+     * @param tenantId The tenant id
+     * @param serverId The id of the database server of the tenant
+     */
+    public void releaseHandle(String tenantId, String serverId) {
+        if (serverCapacity > 0) {
+            serverQueueMap.get(serverId).release();
+        }
+        getTenantState(tenantId).activeHandles.decrementAndGet();
+    }
+
+    private void reject(String tenantId, TenantAdmissionException.Reason reason) {
+        getTenantState(tenantId).rejections.increment();
+        rejectionReasonMap.get(reason).increment();
+        TenantAdmissionException exception = new TenantAdmissionException(tenantId, reason);
+        if (rejectionListener != null) {
+            try {
+                rejectionListener.accept(exception);
+            } catch (RuntimeException e) {
+                logger.warn("Rejection listener failed for {}", tenantId, e);
+            }
+        }
+        throw exception;
+    }
+
+    /**
+     * @return The number of admitted handles of tenantId which are not released yet
+     */
+    public int getActiveHandles(String tenantId) {
+        TenantState state = tenantStateMap.get(tenantId);
+        return state == null ? 0 : state.activeHandles.get();
+    }
+
+    /**
+     * @return The number of handles waiting for capacity on serverId
+     */
+    public int getQueueLength(String serverId) {
+        ServerQueue serverQueue = serverQueueMap.get(serverId);
+        return serverQueue == null ? 0 : serverQueue.getWaiting();
+    }
+
+    /**
+     * @return The number of rejections of tenantId
+     */
+    public long getRejections(String tenantId) {
+        TenantState state = tenantStateMap.get(tenantId);
+        return state == null ? 0 : state.rejections.sum();
+    }
+
+    /**
+     * @return The number of rejections over all tenants for reason
+     */
+    public long getRejections(TenantAdmissionException.Reason reason) {
+        return rejectionReasonMap.get(reason).sum();
+    }
+
+    private static final class TenantState {
+        private volatile TenantLimits limits;
+        // the theoretical arrival time of the next statement, see the generic cell rate algorithm
+        private final AtomicLong arrivalNanos;
+        private final AtomicInteger activeHandles;
+        private final LongAdder rejections;
+
+        private TenantState(TenantLimits limits) {
+            this.limits = Objects.requireNonNull(limits, "Limits are required");
+            this.arrivalNanos = new AtomicLong(System.nanoTime());
+            this.activeHandles = new AtomicInteger();
+            this.rejections = new LongAdder();
+        }
+
+        private boolean tryAcquireQuery(long now) {
+            TenantLimits current = limits;
+            if (current.getQueriesPerSecond() <= 0) {
+                return true;
+            }
+
+            long interval = (long) (TimeUnit.SECONDS.toNanos(1) / current.getQueriesPerSecond());
+            long tolerance = interval * current.getBurst();
+            while (true) {
+                long arrival = arrivalNanos.get();
+                long next = (arrival - now > 0 ? arrival : now) + interval;
+                if (next - now > tolerance) {
+                    return false;
+                }
+                if (arrivalNanos.compareAndSet(arrival, next)) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean tryAcquireHandle(TenantLimits current) {
+            int max = current.getMaxConcurrentHandles();
+            int active;
+            do {
+                active = activeHandles.get();
+                if (max > 0 && active >= max) {
+                    return false;
+                }
+            } while (!activeHandles.compareAndSet(active, active + 1));
+            return true;
+        }
+    }
+
+    public static final class Builder {
+        private TenantLimits defaultLimits = TenantLimits.newBuilder().build();
+        private Function<String, TenantLimits> limitsProvider;
+        private int serverCapacity;
+        private Duration maxQueueWait = Duration.ZERO;
+        private Consumer<TenantAdmissionException> rejectionListener;
+
+        private Builder() {
+        }
+
+        /**
+         * Set the limits of tenants without limits from the limits provider. Defaults to unlimited.
+         */
+        public Builder setDefaultLimits(TenantLimits defaultLimits) {
+            this.defaultLimits = defaultLimits;
+            return this;
+        }
+
+        /**
+         * Set the provider of the initial limits of a tenant id, may return null for the default limits
+         */
+        public Builder setLimitsProvider(Function<String, TenantLimits> limitsProvider) {
+            this.limitsProvider = limitsProvider;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of handles on one database server over all its tenants. Defaults to 0, no fair queuing.
+         */
+        public Builder setServerCapacity(int serverCapacity) {
+            this.serverCapacity = serverCapacity;
+            return this;
+        }
+
+        /**
+         * Set how long a handle may wait for capacity of its server. Defaults to 0, rejected right away.
+         */
+        public Builder setMaxQueueWait(Duration maxQueueWait) {
+            this.maxQueueWait = maxQueueWait;
+            return this;
+        }
+
+        /**
+         * Set a listener called on every rejection, before the exception is thrown
+         */
+        public Builder setRejectionListener(Consumer<TenantAdmissionException> rejectionListener) {
+            this.rejectionListener = rejectionListener;
+            return this;
+        }
+
+        public AdmissionController build() {
+            Objects.requireNonNull(defaultLimits, "Default limits are required");
+            Objects.requireNonNull(maxQueueWait, "Maximum queue wait is required");
+            if (serverCapacity < 0) {
+                throw new IllegalArgumentException("Invalid server capacity");
+            }
+            return new AdmissionController(this);
+        }
+    }
+}
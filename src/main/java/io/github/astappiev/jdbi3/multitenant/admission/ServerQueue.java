@@ -0,0 +1,158 @@
+package io.github.astappiev.jdbi3.multitenant.admission;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The handle slots of one database server, shared by the tenants on it.<br/>
+ * While there is capacity and nobody waits, a slot is taken with a single CAS. Otherwise tenants queue up and
+ * freed slots are handed out by weighted fair queuing: each waiter gets a virtual finish time of
+ * max(virtual time, previous finish of its tenant) + 1 / weight, and the smallest finish time is served first.
+ */
+final class ServerQueue {
+
+    private final int capacity;
+    private final AtomicInteger inUse;
+    private final AtomicInteger waiting;
+    private final ReentrantLock lock;
+    private final PriorityQueue<Waiter> queue;
+    private final Map<String, Double> lastFinishTenantMap;
+    private double virtualTime;
+    private long sequence;
+
+    ServerQueue(int capacity) {
+        this.capacity = capacity;
+        this.inUse = new AtomicInteger();
+        this.waiting = new AtomicInteger();
+        this.lock = new ReentrantLock();
+        this.queue = new PriorityQueue<>(Comparator.comparingDouble((Waiter waiter) -> waiter.finish).thenComparingLong(waiter -> waiter.sequence));
+        this.lastFinishTenantMap = new HashMap<>();
+    }
+
+    int getInUse() {
+        return inUse.get();
+    }
+
+    int getWaiting() {
+        return waiting.get();
+    }
+
+    private boolean tryTake() {
+        int current;
+        do {
+            current = inUse.get();
+            if (current >= capacity) {
+                return false;
+            }
+        } while (!inUse.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Take a slot, waiting in the fair queue up to maxWaitNanos
+     *
+     * @return true if a slot was taken
+     */
+    boolean acquire(String tenantId, int weight, long maxWaitNanos) {
+        if (waiting.get() == 0 && tryTake()) {
+            return true;
+        }
+        if (maxWaitNanos <= 0) {
+            return false;
+        }
+
+        Waiter waiter;
+        lock.lock();
+        try {
+            // waiting must be incremented before inUse is read again, see release
+            waiting.incrementAndGet();
+            if (queue.isEmpty() && tryTake()) {
+                waiting.decrementAndGet();
+                return true;
+            }
+            double start = Math.max(virtualTime, lastFinishTenantMap.getOrDefault(tenantId, 0.0));
+            waiter = new Waiter(Thread.currentThread(), start + 1.0 / weight, sequence++);
+            lastFinishTenantMap.put(tenantId, waiter.finish);
+            queue.add(waiter);
+        } finally {
+            lock.unlock();
+        }
+
+        long deadline = System.nanoTime() + maxWaitNanos;
+        boolean interrupted = false;
+        while (!waiter.granted) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                interrupted = true;
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (waiter.granted) {
+            return true;
+        }
+
+        lock.lock();
+        try {
+            if (waiter.granted) {
+                return true;
+            }
+            queue.remove(waiter);
+            waiting.decrementAndGet();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release() {
+        inUse.decrementAndGet();
+        if (waiting.get() > 0) {
+            dispatch();
+        }
+    }
+
+    private void dispatch() {
+        lock.lock();
+        try {
+            while (!queue.isEmpty() && tryTake()) {
+                Waiter waiter = queue.poll();
+                virtualTime = waiter.finish;
+                waiting.decrementAndGet();
+                waiter.granted = true;
+                LockSupport.unpark(waiter.thread);
+            }
+            if (queue.isEmpty()) {
+                // the server is idle, start a new busy period
+                lastFinishTenantMap.clear();
+                virtualTime = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Waiter {
+        private final Thread thread;
+        private final double finish;
+        private final long sequence;
+        private volatile boolean granted;
+
+        private Waiter(Thread thread, double finish, long sequence) {
+            this.thread = thread;
+            this.finish = finish;
+            this.sequence = sequence;
+        }
+    }
+}
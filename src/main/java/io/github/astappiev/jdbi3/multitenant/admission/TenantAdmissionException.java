@@ -0,0 +1,34 @@
+package io.github.astappiev.jdbi3.multitenant.admission;
+
+/**
+ * Thrown when a tenant exceeds its admission limits
+ */
+public class TenantAdmissionException extends RuntimeException {
+    private static final long serialVersionUID = -3589141620548360914L;
+
+    public enum Reason {
+        /** The tenant exceeded its statements per second */
+        RATE_LIMITED,
+        /** The tenant exceeded its concurrent handles */
+        CONCURRENCY_LIMITED,
+        /** The server of the tenant had no capacity within the maximum queue wait */
+        QUEUE_TIMEOUT
+    }
+
+    private final String tenantId;
+    private final Reason reason;
+
+    public TenantAdmissionException(String tenantId, Reason reason) {
+        super("Tenant " + tenantId + " was not admitted: " + reason);
+        this.tenantId = tenantId;
+        this.reason = reason;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,128 @@
+package io.github.astappiev.jdbi3.multitenant.admission;
+
+import java.util.Objects;
+
+/**
+ * The admission limits of a tenant. A limit of 0 means unlimited.
+ */
+public class TenantLimits {
+
+    private final double queriesPerSecond;
+    private final int burst;
+    private final int maxConcurrentHandles;
+    private final int weight;
+
+    private TenantLimits(Builder builder) {
+        queriesPerSecond = builder.queriesPerSecond;
+        burst = builder.burst > 0 ? builder.burst : (int) Math.max(1, Math.ceil(builder.queriesPerSecond));
+        maxConcurrentHandles = builder.maxConcurrentHandles;
+        weight = builder.weight;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The sustained number of statements per second, 0 if unlimited
+     */
+    public double getQueriesPerSecond() {
+        return queriesPerSecond;
+    }
+
+    /**
+     * @return The number of statements which may run at once above the sustained rate
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * @return The maximum number of handles open at the same time, 0 if unlimited
+     */
+    public int getMaxConcurrentHandles() {
+        return maxConcurrentHandles;
+    }
+
+    /**
+     * @return The share of the tenant in the fair queue of its server, relative to the other tenants
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TenantLimits that = (TenantLimits) o;
+        return Double.compare(that.queriesPerSecond, queriesPerSecond) == 0 &&
+            burst == that.burst &&
+            maxConcurrentHandles == that.maxConcurrentHandles &&
+            weight == that.weight;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(queriesPerSecond, burst, maxConcurrentHandles, weight);
+    }
+
+    @Override
+    public String toString() {
+        return "TenantLimits{" +
+            "queriesPerSecond=" + queriesPerSecond +
+            ", burst=" + burst +
+            ", maxConcurrentHandles=" + maxConcurrentHandles +
+            ", weight=" + weight +
+            '}';
+    }
+
+    public static final class Builder {
+        private double queriesPerSecond;
+        private int burst;
+        private int maxConcurrentHandles;
+        private int weight = 1;
+
+        private Builder() {
+        }
+
+        /**
+         * Set the sustained number of statements per second. Defaults to 0, unlimited.
+         */
+        public Builder setQueriesPerSecond(double queriesPerSecond) {
+            this.queriesPerSecond = queriesPerSecond;
+            return this;
+        }
+
+        /**
+         * Set the number of statements which may run at once above the sustained rate. Defaults to one second worth of statements.
+         */
+        public Builder setBurst(int burst) {
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of handles open at the same time. Defaults to 0, unlimited.
+         */
+        public Builder setMaxConcurrentHandles(int maxConcurrentHandles) {
+            this.maxConcurrentHandles = maxConcurrentHandles;
+            return this;
+        }
+
+        /**
+         * Set the share of the tenant in the fair queue of its server. Defaults to 1.
+         */
+        public Builder setWeight(int weight) {
+            this.weight = weight;
+            return this;
+        }
+
+        public TenantLimits build() {
+            if (queriesPerSecond < 0 || burst < 0 || maxConcurrentHandles < 0 || weight < 1) {
+                throw new IllegalArgumentException("Invalid tenant limits");
+            }
+            return new TenantLimits(this);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package io.github.astappiev.jdbi3.multitenant.batch;
+
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.PreparedBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Collects small writes for many tenants and executes them as JDBC batches.<br/>
+ * Records are grouped per tenant and SQL. A group is written as soon as it reaches the maximum batch size,
+ * or when the linger time passed since the first buffered record of the tenant. Each tenant has at most
+ * the maximum in-flight batches running at once, further batches wait in the buffer. A batch is written in one transaction,
+ * so the futures of its records either all complete with their update count or all fail.<br/>
+ * Each tenant buffers at most the maximum buffered records. Beyond that submit does not block, the future of the record fails
+ * right away with a {@link RejectedExecutionException}, so a slow or failing tenant sheds load instead of filling the heap.
+ */
+public class TenantWritePipeline implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantWritePipeline.class);
+    private final Function<String, Jdbi> jdbiProvider;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final int maxInFlightBatches;
+    private final int maxBufferedRecords;
+    private final Duration closeTimeout;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService lingerScheduler;
+    private final ConcurrentMap<String, TenantBuffer> bufferTenantMap;
+    private final Set<CompletableFuture<Integer>> outstanding;
+    private volatile boolean closed;
+
+    private TenantWritePipeline(Builder builder) {
+        jdbiProvider = builder.jdbiProvider;
+        maxBatchSize = builder.maxBatchSize;
+        lingerNanos = builder.linger.toNanos();
+        maxInFlightBatches = builder.maxInFlightBatches;
+        maxBufferedRecords = builder.maxBufferedRecords;
+        closeTimeout = builder.closeTimeout;
+        executor = Executors.newFixedThreadPool(builder.parallelism, threadFactory("jdbi-tenant-write"));
+        lingerScheduler = Executors.newSingleThreadScheduledExecutor(threadFactory("jdbi-tenant-write-linger"));
+        bufferTenantMap = new ConcurrentHashMap<>();
+        outstanding = ConcurrentHashMap.newKeySet();
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Buffer a write of tenantId
+     *
+     * @param tenantId   The tenant id
+     * @param sql        The statement, e.g. {@code insert into events (type, payload) values (:type, :payload)}
+     * @param parameters The named parameters of the statement
+     * @return A future of the update count ({@link Statement#SUCCESS_NO_INFO} if the driver does not report it),
+     * failed if the batch of the record failed or the pipeline is closed, or with a {@link RejectedExecutionException}
+     * if the buffer of the tenant is full
+     */
+    public CompletableFuture<Integer> submit(String tenantId, String sql, Map<String, ?> parameters) {
+        Objects.requireNonNull(tenantId, "Tenant id is required");
+        Objects.requireNonNull(sql, "SQL is required");
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IllegalStateException("TenantWritePipeline is closed"));
+            return future;
+        }
+
+        outstanding.add(future);
+        future.whenComplete((count, e) -> outstanding.remove(future));
+        TenantBuffer buffer = bufferTenantMap.computeIfAbsent(tenantId, TenantBuffer::new);
+        boolean full;
+        synchronized (buffer) {
+            // close() may have flushed this buffer since the check above, a record added now would never be written
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("TenantWritePipeline is closed"));
+                return future;
+            }
+            if (buffer.buffered >= maxBufferedRecords) {
+                future.completeExceptionally(new RejectedExecutionException("Write buffer of " + tenantId + " is full"));
+                return future;
+            }
+            List<Record> group = buffer.groups.computeIfAbsent(sql, s -> new ArrayList<>());
+            group.add(new Record(parameters, future));
+            buffer.buffered++;
+            full = group.size() >= maxBatchSize;
+            if (!full && !buffer.lingerScheduled) {
+                buffer.lingerScheduled = true;
+                lingerScheduler.schedule(() -> {
+                    synchronized (buffer) {
+                        buffer.lingerScheduled = false;
+                    }
+                    dispatch(buffer, true);
+                }, lingerNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full) {
+            dispatch(buffer, false);
+        }
+        return future;
+    }
+
+    /**
+     * Write all buffered records without waiting for the linger time, as far as the in-flight batches allow
+     */
+    public void flush() {
+        bufferTenantMap.values().forEach(buffer -> dispatch(buffer, true));
+    }
+
+    /**
+     * @return The number of records which are buffered or being written
+     */
+    public int getNumOutstanding() {
+        return outstanding.size();
+    }
+
+    /**
+     * Start batches of buffer while it has in-flight capacity
+     *
+     * @param buffer The buffer of a tenant
+     * @param all    true to write all groups, false to write full groups only, unless records are overdue
+     */
+    private void dispatch(TenantBuffer buffer, boolean all) {
+        List<Batch> batches = new ArrayList<>();
+        synchronized (buffer) {
+            // records which waited for their linger time, or were flushed, go with the next free slot
+            buffer.overdue |= all;
+            while (buffer.inFlight < maxInFlightBatches) {
+                Map.Entry<String, List<Record>> group = nextGroup(buffer, buffer.overdue);
+                if (group == null) {
+                    break;
+                }
+
+                List<Record> records = group.getValue();
+                List<Record> batch;
+                if (records.size() <= maxBatchSize) {
+                    batch = records;
+                    buffer.groups.remove(group.getKey());
+                } else {
+                    List<Record> head = records.subList(0, maxBatchSize);
+                    batch = new ArrayList<>(head);
+                    head.clear();
+                }
+                buffer.inFlight++;
+                buffer.buffered -= batch.size();
+                batches.add(new Batch(buffer, group.getKey(), batch));
+            }
+            if (buffer.groups.isEmpty()) {
+                buffer.overdue = false;
+            }
+        }
+
+        for (Batch batch : batches) {
+            try {
+                executor.execute(() -> write(batch));
+            } catch (RuntimeException e) {
+                complete(batch, null, e);
+            }
+        }
+    }
+
+    private Map.Entry<String, List<Record>> nextGroup(TenantBuffer buffer, boolean all) {
+        Iterator<Map.Entry<String, List<Record>>> iterator = buffer.groups.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, List<Record>> group = iterator.next();
+            if (all || group.getValue().size() >= maxBatchSize) {
+                return group;
+            }
+        }
+        return null;
+    }
+
+    private void write(Batch batch) {
+        try {
+            int[] counts = jdbiProvider.apply(batch.buffer.tenantId).inTransaction(handle -> {
+                PreparedBatch preparedBatch = handle.prepareBatch(batch.sql);
+                for (Record record : batch.records) {
+                    preparedBatch.add(record.parameters);
+                }
+                return preparedBatch.execute();
+            });
+            logger.debug("Wrote batch of {} records for {}", batch.records.size(), batch.buffer.tenantId);
+            complete(batch, counts, null);
+        } catch (RuntimeException | Error e) {
+            logger.error("Failed to write batch of {} records for {}", batch.records.size(), batch.buffer.tenantId, e);
+            complete(batch, null, e);
+        }
+    }
+
+    private void complete(Batch batch, int[] counts, Throwable failure) {
+        for (int i = 0; i < batch.records.size(); i++) {
+            CompletableFuture<Integer> future = batch.records.get(i).future;
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(i < counts.length ? counts[i] : Statement.SUCCESS_NO_INFO);
+            }
+        }
+        synchronized (batch.buffer) {
+            batch.buffer.inFlight--;
+        }
+        // full groups and overdue records waiting for a free slot, others keep lingering for more records
+        dispatch(batch.buffer, false);
+    }
+
+    /**
+     * Refuse new records, write all buffered records and wait up to the close timeout for them.
+     * Records still buffered after the timeout are failed.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flush();
+
+        CompletableFuture<?>[] futures = outstanding.toArray(new CompletableFuture<?>[0]);
+        try {
+            CompletableFuture.allOf(futures).get(closeTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // failures are reported on the futures of the records
+        } catch (TimeoutException e) {
+            logger.warn("Closing with {} records still outstanding", outstanding.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lingerScheduler.shutdownNow();
+        executor.shutdown();
+        failBuffered();
+    }
+
+    private void failBuffered() {
+        List<Record> records = new ArrayList<>();
+        for (TenantBuffer buffer : bufferTenantMap.values()) {
+            synchronized (buffer) {
+                buffer.groups.values().forEach(records::addAll);
+                buffer.groups.clear();
+                buffer.buffered = 0;
+            }
+        }
+        if (!records.isEmpty()) {
+            logger.warn("Failing {} buffered records which were not written before the close timeout", records.size());
+            IllegalStateException failure = new IllegalStateException("TenantWritePipeline was closed before the record was written");
+            records.forEach(record -> record.future.completeExceptionally(failure));
+        }
+    }
+
+    private static final class Record {
+        private final Map<String, ?> parameters;
+        private final CompletableFuture<Integer> future;
+
+        private Record(Map<String, ?> parameters, CompletableFuture<Integer> future) {
+            this.parameters = parameters;
+            this.future = future;
+        }
+    }
+
+    private static final class Batch {
+        private final TenantBuffer buffer;
+        private final String sql;
+        private final List<Record> records;
+
+        private Batch(TenantBuffer buffer, String sql, List<Record> records) {
+            this.buffer = buffer;
+            this.sql = sql;
+            this.records = records;
+        }
+    }
+
+    /**
+     * The buffered records of one tenant, guarded by the buffer monitor
+     */
+    private static final class TenantBuffer {
+        private final String tenantId;
+        private final Map<String, List<Record>> groups;
+        private int inFlight;
+        private int buffered;
+        private boolean lingerScheduled;
+        private boolean overdue;
+
+        private TenantBuffer(String tenantId) {
+            this.tenantId = tenantId;
+            this.groups = new LinkedHashMap<>();
+        }
+    }
+
+    public static final class Builder {
+        private Function<String, Jdbi> jdbiProvider;
+        private int maxBatchSize = 100;
+        private Duration linger = Duration.ofMillis(5);
+        private int maxInFlightBatches = 2;
+        private int maxBufferedRecords = 10000;
+        private int parallelism = 4;
+        private Duration closeTimeout = Duration.ofSeconds(30);
+
+        private Builder() {
+        }
+
+        /**
+         * Set the provider of the {@link Jdbi} of a tenant id, e.g. {@code JdbiTenantRegistry::getJdbi}
+         */
+        public Builder setJdbiProvider(Function<String, Jdbi> jdbiProvider) {
+            this.jdbiProvider = jdbiProvider;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of records in one batch. Defaults to 100.
+         */
+        public Builder setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Set how long a record may wait for more records of its tenant. Defaults to 5 ms.
+         */
+        public Builder setLinger(Duration linger) {
+            this.linger = linger;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of batches of one tenant written at the same time. Defaults to 2.
+         */
+        public Builder setMaxInFlightBatches(int maxInFlightBatches) {
+            this.maxInFlightBatches = maxInFlightBatches;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of records of one tenant waiting for a batch, further records are rejected. Defaults to 10000.
+         */
+        public Builder setMaxBufferedRecords(int maxBufferedRecords) {
+            this.maxBufferedRecords = maxBufferedRecords;
+            return this;
+        }
+
+        /**
+         * Set the number of threads writing batches. Defaults to 4.
+         */
+        public Builder setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Set how long closing waits for the outstanding records. Defaults to 30 seconds.
+         */
+        public Builder setCloseTimeout(Duration closeTimeout) {
+            this.closeTimeout = closeTimeout;
+            return this;
+        }
+
+        public TenantWritePipeline build() {
+            Objects.requireNonNull(jdbiProvider, "Jdbi provider is required");
+            Objects.requireNonNull(linger, "Linger is required");
+            Objects.requireNonNull(closeTimeout, "Close timeout is required");
+            if (maxBatchSize < 1 || maxInFlightBatches < 1 || maxBufferedRecords < 1 || parallelism < 1 || linger.isNegative()) {
+                throw new IllegalArgumentException("Invalid write pipeline options");
+            }
+            return new TenantWritePipeline(this);
+        }
+    }
+}
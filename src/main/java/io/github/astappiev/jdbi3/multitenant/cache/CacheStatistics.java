@@ -0,0 +1,66 @@
+package io.github.astappiev.jdbi3.multitenant.cache;
+
+/**
+ * The counters of the {@link TenantQueryCache} of one tenant
+ */
+public final class CacheStatistics {
+
+    private final String tenantId;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+
+    CacheStatistics(String tenantId, long hits, long misses, long evictions, int size) {
+        this.tenantId = tenantId;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of entries removed because of the size bounds or the time to live
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return The number of cached results
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return The ratio of hits to all lookups, 0 if there were no lookups
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics{" +
+            "tenantId='" + tenantId + '\'' +
+            ", hits=" + hits +
+            ", misses=" + misses +
+            ", evictions=" + evictions +
+            ", size=" + size +
+            '}';
+    }
+}
@@ -0,0 +1,388 @@
+package io.github.astappiev.jdbi3.multitenant.cache;
+
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.result.ResultIterable;
+import org.jdbi.v3.core.statement.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A cache of query results, keyed by tenant, SQL, bound parameters and the type of the rows.<br/>
+ * Each tenant has its own LRU segment bounded by the maximum entries per tenant. When all tenants together exceed the maximum entries,
+ * the least recently used entry of the largest tenant is evicted, so a tenant with many distinct queries does not push out the others.
+ * Entries expire after the time to live. They can be invalidated per tenant or by table tag, and results loaded concurrently
+ * with an invalidation are not cached.
+ */
+public class TenantQueryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantQueryCache.class);
+    private final int maxEntriesPerTenant;
+    private final int maxEntries;
+    private final long timeToLiveNanos;
+    private final ConcurrentMap<String, Segment> segmentTenantMap;
+    private final AtomicInteger size;
+
+    private TenantQueryCache(Builder builder) {
+        maxEntriesPerTenant = builder.maxEntriesPerTenant;
+        maxEntries = builder.maxEntries;
+        timeToLiveNanos = builder.timeToLive.toNanos();
+        segmentTenantMap = new ConcurrentHashMap<>();
+        size = new AtomicInteger();
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    private Segment getSegment(String tenantId) {
+        return segmentTenantMap.computeIfAbsent(tenantId, Segment::new);
+    }
+
+    /**
+     * Get the cached result of a query, or load and cache it
+     *
+     * @param tenantId   The tenant id
+     * @param sql        The SQL of the query
+     * @param parameters The bound parameters, the values must implement equals and hashCode
+     * @param rowType    The type of the rows, part of the key, so loaders of different types never share a result
+     * @param tags       The tags (e.g. table names) the result can be invalidated by
+     * @param loader     Loads the result on a miss
+     * @param <T>        The type of the rows
+     * @return The unmodifiable result
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> get(String tenantId, String sql, Map<String, ?> parameters, Class<T> rowType, Set<String> tags, Supplier<List<T>> loader) {
+        Key key = new Key(sql, parameters, rowType);
+        Segment segment = getSegment(tenantId);
+        long generation;
+        synchronized (segment) {
+            Entry entry = segment.entries.get(key);
+            if (entry != null) {
+                if (System.nanoTime() - entry.expiresAtNanos < 0) {
+                    segment.hits.increment();
+                    return (List<T>) entry.value;
+                }
+                segment.remove(key);
+                segment.evictions.increment();
+            }
+            generation = segment.generation;
+        }
+
+        segment.misses.increment();
+        List<T> value = Collections.unmodifiableList(new ArrayList<>(loader.get()));
+        put(segment, key, new Entry(value, Set.copyOf(tags), System.nanoTime() + timeToLiveNanos), generation);
+        return value;
+    }
+
+    /**
+     * Get the cached result of a query, or run it on jdbi and cache it
+     *
+     * @param tenantId   The tenant id
+     * @param jdbi       The {@link Jdbi} of the tenant
+     * @param sql        The SQL of the query
+     * @param parameters The named parameters to bind
+     * @param rowType    The type of the rows, part of the key. Mappers of the same SQL and row type must map to equal rows
+     * @param mapper     Maps the query to its rows, e.g. {@code query -> query.mapTo(String.class)}
+     * @param tags       The tags (e.g. table names) the result can be invalidated by
+     * @param <T>        The type of the rows
+     * @return The unmodifiable result
+     */
+    public <T> List<T> query(String tenantId, Jdbi jdbi, String sql, Map<String, ?> parameters, Class<T> rowType,
+                             Function<Query, ResultIterable<T>> mapper, String... tags) {
+        return get(tenantId, sql, parameters, rowType, Set.copyOf(Arrays.asList(tags)), () -> jdbi.withHandle(handle -> {
+            Query query = handle.createQuery(sql);
+            query.bindMap(parameters);
+            return mapper.apply(query).list();
+        }));
+    }
+
+    private void put(Segment segment, Key key, Entry entry, long generation) {
+        synchronized (segment) {
+            if (segment.generation != generation || segment.removed) {
+                // invalidated while loading
+                return;
+            }
+            segment.put(key, entry);
+            while (segment.entries.size() > maxEntriesPerTenant) {
+                segment.removeEldest();
+            }
+        }
+
+        while (size.get() > maxEntries) {
+            Segment largest = null;
+            int largestSize = 0;
+            for (Segment candidate : segmentTenantMap.values()) {
+                int candidateSize = candidate.entries.size();
+                if (candidateSize > largestSize) {
+                    largest = candidate;
+                    largestSize = candidateSize;
+                }
+            }
+            if (largest == null) {
+                break;
+            }
+            synchronized (largest) {
+                largest.removeEldest();
+            }
+        }
+    }
+
+    /**
+     * Remove all cached results of tenantId
+     *
+     * @param tenantId The tenant id
+     */
+    public void invalidateTenant(String tenantId) {
+        Segment segment = segmentTenantMap.remove(tenantId);
+        if (segment != null) {
+            synchronized (segment) {
+                segment.removed = true;
+                segment.clear();
+            }
+            logger.debug("Invalidated query cache of {}", tenantId);
+        }
+    }
+
+    /**
+     * Remove the cached results of tenantId tagged with tag
+     *
+     * @param tenantId The tenant id
+     * @param tag      The tag, e.g. a table name
+     */
+    public void invalidateTag(String tenantId, String tag) {
+        Segment segment = segmentTenantMap.get(tenantId);
+        if (segment != null) {
+            synchronized (segment) {
+                segment.invalidateTag(tag);
+            }
+        }
+    }
+
+    /**
+     * Remove the cached results of all tenants tagged with tag
+     *
+     * @param tag The tag, e.g. a table name
+     */
+    public void invalidateTag(String tag) {
+        for (Segment segment : segmentTenantMap.values()) {
+            synchronized (segment) {
+                segment.invalidateTag(tag);
+            }
+        }
+    }
+
+    /**
+     * Remove all cached results
+     */
+    public void invalidateAll() {
+        segmentTenantMap.keySet().forEach(this::invalidateTenant);
+    }
+
+    /**
+     * @return The number of cached results over all tenants
+     */
+    public int getSize() {
+        return size.get();
+    }
+
+    /**
+     * @param tenantId The tenant id
+     * @return The hits, misses and size of the cache of tenantId
+     */
+    public CacheStatistics getStatistics(String tenantId) {
+        Segment segment = segmentTenantMap.get(tenantId);
+        if (segment == null) {
+            return new CacheStatistics(tenantId, 0, 0, 0, 0);
+        }
+        synchronized (segment) {
+            return new CacheStatistics(tenantId, segment.hits.sum(), segment.misses.sum(), segment.evictions.sum(), segment.entries.size());
+        }
+    }
+
+    /**
+     * @return The statistics of all tenants with cached results
+     */
+    public Map<String, CacheStatistics> getStatistics() {
+        Map<String, CacheStatistics> statistics = new HashMap<>();
+        segmentTenantMap.keySet().forEach(tenantId -> statistics.put(tenantId, getStatistics(tenantId)));
+        return statistics;
+    }
+
+    private static final class Key {
+        private final String sql;
+        private final Map<String, ?> parameters;
+        private final Class<?> rowType;
+        private final int hashCode;
+
+        private Key(String sql, Map<String, ?> parameters, Class<?> rowType) {
+            this.sql = Objects.requireNonNull(sql, "SQL is required");
+            this.parameters = new HashMap<>(parameters);
+            this.rowType = Objects.requireNonNull(rowType, "Row type is required");
+            this.hashCode = Objects.hash(sql, this.parameters, rowType);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return hashCode == key.hashCode && sql.equals(key.sql) && parameters.equals(key.parameters) && rowType.equals(key.rowType);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Entry {
+        private final List<?> value;
+        private final Set<String> tags;
+        private final long expiresAtNanos;
+
+        private Entry(List<?> value, Set<String> tags, long expiresAtNanos) {
+            this.value = value;
+            this.tags = tags;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    /**
+     * The entries of one tenant, guarded by the segment monitor
+     */
+    private final class Segment {
+        private final String tenantId;
+        private final LinkedHashMap<Key, Entry> entries;
+        private final Map<String, Set<Key>> keyTagMap;
+        private final LongAdder hits;
+        private final LongAdder misses;
+        private final LongAdder evictions;
+        private long generation;
+        private boolean removed;
+
+        private Segment(String tenantId) {
+            this.tenantId = tenantId;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true);
+            this.keyTagMap = new HashMap<>();
+            this.hits = new LongAdder();
+            this.misses = new LongAdder();
+            this.evictions = new LongAdder();
+        }
+
+        private void put(Key key, Entry entry) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                untag(key, previous);
+            } else {
+                size.incrementAndGet();
+            }
+            for (String tag : entry.tags) {
+                keyTagMap.computeIfAbsent(tag, t -> new HashSet<>()).add(key);
+            }
+        }
+
+        private void remove(Key key) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                size.decrementAndGet();
+                untag(key, entry);
+            }
+        }
+
+        private void removeEldest() {
+            Iterator<Key> iterator = entries.keySet().iterator();
+            if (iterator.hasNext()) {
+                remove(iterator.next());
+                evictions.increment();
+            }
+        }
+
+        private void untag(Key key, Entry entry) {
+            for (String tag : entry.tags) {
+                Set<Key> keys = keyTagMap.get(tag);
+                if (keys != null) {
+                    keys.remove(key);
+                    if (keys.isEmpty()) {
+                        keyTagMap.remove(tag);
+                    }
+                }
+            }
+        }
+
+        private void invalidateTag(String tag) {
+            generation++;
+            Set<Key> keys = keyTagMap.remove(tag);
+            if (keys != null) {
+                keys.forEach(this::remove);
+                logger.debug("Invalidated {} query results of {} tagged {}", keys.size(), tenantId, tag);
+            }
+        }
+
+        private void clear() {
+            generation++;
+            size.addAndGet(-entries.size());
+            entries.clear();
+            keyTagMap.clear();
+        }
+    }
+
+    public static final class Builder {
+        private int maxEntriesPerTenant = 1000;
+        private int maxEntries = 10000;
+        private Duration timeToLive = Duration.ofMinutes(5);
+
+        private Builder() {
+        }
+
+        /**
+         * Set the maximum number of cached results of one tenant. Defaults to 1000.
+         */
+        public Builder setMaxEntriesPerTenant(int maxEntriesPerTenant) {
+            this.maxEntriesPerTenant = maxEntriesPerTenant;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of cached results over all tenants. Defaults to 10000.
+         */
+        public Builder setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * Set how long a result is cached. Defaults to 5 minutes.
+         */
+        public Builder setTimeToLive(Duration timeToLive) {
+            this.timeToLive = timeToLive;
+            return this;
+        }
+
+        public TenantQueryCache build() {
+            Objects.requireNonNull(timeToLive, "Time to live is required");
+            if (maxEntriesPerTenant < 1 || maxEntries < 1 || timeToLive.isNegative() || timeToLive.isZero()) {
+                throw new IllegalArgumentException("Invalid cache bounds");
+            }
+            return new TenantQueryCache(this);
+        }
+    }
+}
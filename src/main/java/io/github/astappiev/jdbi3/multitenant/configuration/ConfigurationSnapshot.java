@@ -0,0 +1,286 @@
+package io.github.astappiev.jdbi3.multitenant.configuration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * A compact, versioned binary snapshot of tenant {@link DatabaseConfiguration}s on local disk.<br/>
+ * Passwords are either encrypted with AES-GCM or not stored at all and resolved by reference (the tenant id) when the snapshot is read.
+ * The snapshot is read through a memory-mapped file and written atomically.
+ */
+public class ConfigurationSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConfigurationSnapshot.class);
+
+    static final int MAGIC = 0x4A4D5453;
+    static final short VERSION = 1;
+    private static final byte SECRET_BY_REFERENCE = 0;
+    private static final byte SECRET_ENCRYPTED = 1;
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+
+    private final Path path;
+    private final SecretKey secretKey;
+    private final Function<String, String> secretResolver;
+    private final SecureRandom random;
+
+    private ConfigurationSnapshot(Builder builder) {
+        path = builder.path;
+        secretKey = builder.secretKey;
+        secretResolver = builder.secretResolver;
+        random = new SecureRandom();
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Read the snapshot
+     *
+     * @return The tenant configurations by tenant id, empty if there is no snapshot yet.
+     * A tenant whose password cannot be resolved or whose configuration is invalid is skipped.
+     * @throws DatabaseConfigurationException if the snapshot is corrupt or cannot be decrypted
+     */
+    public Map<String, DatabaseConfiguration> read() {
+        if (!Files.exists(path)) {
+            return new LinkedHashMap<>();
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        } catch (IOException e) {
+            throw new DatabaseConfigurationException("Cannot read configuration snapshot " + path, e);
+        }
+    }
+
+    private Map<String, DatabaseConfiguration> read(ByteBuffer buffer) {
+        try {
+            if (buffer.limit() < Long.BYTES || checksum(buffer, buffer.limit() - Long.BYTES) != buffer.getLong(buffer.limit() - Long.BYTES)) {
+                throw new DatabaseConfigurationException("Configuration snapshot " + path + " is corrupt");
+            }
+            if (buffer.getInt() != MAGIC) {
+                throw new DatabaseConfigurationException("Configuration snapshot " + path + " has an unknown format");
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new DatabaseConfigurationException("Configuration snapshot " + path + " has an unsupported version " + version);
+            }
+            byte secretMode = buffer.get();
+            if (secretMode != (secretKey != null ? SECRET_ENCRYPTED : SECRET_BY_REFERENCE)) {
+                throw new DatabaseConfigurationException("Configuration snapshot " + path + " was written with a different secret mode");
+            }
+
+            int count = buffer.getInt();
+            Map<String, DatabaseConfiguration> configurations = new LinkedHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String tenantId = readString(buffer);
+                DatabaseConfiguration.Builder builder = DatabaseConfiguration.newBuilder()
+                    .setDriverClassName(readString(buffer))
+                    .setJdbcUrl(readString(buffer))
+                    .setUsername(readString(buffer));
+                String password = secretMode == SECRET_ENCRYPTED ? decrypt(tenantId, readBytes(buffer)) : null;
+                builder.setMinPoolSize(readInteger(buffer))
+                    .setMaxPoolSize(readInteger(buffer))
+                    .setServerId(readString(buffer));
+                try {
+                    builder.setPassword(secretMode == SECRET_ENCRYPTED ? password : secretResolver.apply(tenantId));
+                    configurations.put(tenantId, builder.build());
+                } catch (RuntimeException e) {
+                    // e.g. a decommissioned tenant without a secret, it is fetched from the live provider if still needed
+                    logger.warn("Skipping tenant {} of configuration snapshot {}", tenantId, path, e);
+                }
+            }
+            return configurations;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new DatabaseConfigurationException("Configuration snapshot " + path + " is corrupt", e);
+        }
+    }
+
+    /**
+     * Write the snapshot, replacing the previous one atomically
+     *
+     * @param configurations The tenant configurations by tenant id
+     */
+    public void write(Map<String, DatabaseConfiguration> configurations) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeByte(secretKey != null ? SECRET_ENCRYPTED : SECRET_BY_REFERENCE);
+            out.writeInt(configurations.size());
+            for (Map.Entry<String, DatabaseConfiguration> entry : configurations.entrySet()) {
+                DatabaseConfiguration configuration = entry.getValue();
+                writeString(out, entry.getKey());
+                writeString(out, configuration.getDriverClassName());
+                writeString(out, configuration.getJdbcUrl());
+                writeString(out, configuration.getUsername());
+                if (secretKey != null) {
+                    writeBytes(out, encrypt(entry.getKey(), configuration.getPassword()));
+                }
+                writeInteger(out, configuration.getMinPoolSize());
+                writeInteger(out, configuration.getMaxPoolSize());
+                writeString(out, configuration.getConfiguredServerId());
+            }
+            out.flush();
+
+            byte[] content = bytes.toByteArray();
+            out.writeLong(checksum(ByteBuffer.wrap(content), content.length));
+            out.flush();
+
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temp, bytes.toByteArray());
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new DatabaseConfigurationException("Cannot write configuration snapshot " + path, e);
+        }
+    }
+
+    private byte[] encrypt(String tenantId, String password) {
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH, iv));
+            cipher.updateAAD(tenantId.getBytes(StandardCharsets.UTF_8));
+            byte[] encrypted = cipher.doFinal(password.getBytes(StandardCharsets.UTF_8));
+
+            byte[] result = new byte[IV_LENGTH + encrypted.length];
+            System.arraycopy(iv, 0, result, 0, IV_LENGTH);
+            System.arraycopy(encrypted, 0, result, IV_LENGTH, encrypted.length);
+            return result;
+        } catch (GeneralSecurityException e) {
+            throw new DatabaseConfigurationException("Cannot encrypt password for tenant " + tenantId, e);
+        }
+    }
+
+    private String decrypt(String tenantId, byte[] secret) {
+        try {
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH, secret, 0, IV_LENGTH));
+            cipher.updateAAD(tenantId.getBytes(StandardCharsets.UTF_8));
+            return new String(cipher.doFinal(secret, IV_LENGTH, secret.length - IV_LENGTH), StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            throw new DatabaseConfigurationException("Cannot decrypt password for tenant " + tenantId, e);
+        }
+    }
+
+    private static long checksum(ByteBuffer buffer, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(0).limit(length));
+        return crc.getValue();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeInt(value == null ? -1 : value);
+    }
+
+    private static Integer readInteger(ByteBuffer buffer) {
+        int value = buffer.getInt();
+        return value < 0 ? null : value;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] value = readBytes(buffer);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return value;
+    }
+
+    public static final class Builder {
+        private Path path;
+        private SecretKey secretKey;
+        private Function<String, String> secretResolver;
+
+        private Builder() {
+        }
+
+        public Builder setPath(Path path) {
+            this.path = path;
+            return this;
+        }
+
+        /**
+         * Set the AES key to encrypt passwords in the snapshot
+         */
+        public Builder setSecretKey(SecretKey secretKey) {
+            this.secretKey = secretKey;
+            return this;
+        }
+
+        /**
+         * Set the function resolving the password of a tenant id. Passwords are not stored in the snapshot when it is set.
+         */
+        public Builder setSecretResolver(Function<String, String> secretResolver) {
+            this.secretResolver = secretResolver;
+            return this;
+        }
+
+        public ConfigurationSnapshot build() {
+            Objects.requireNonNull(path, "Path is required");
+            if ((secretKey == null) == (secretResolver == null)) {
+                throw new IllegalStateException("Either a secret key or a secret resolver is required");
+            }
+            return new ConfigurationSnapshot(this);
+        }
+    }
+}
@@ -11,6 +11,9 @@ public class DatabaseConfiguration implements Serializable {
     private final String databaseName;
     private final String username;
     private final String password;
+    private final Integer minPoolSize;
+    private final Integer maxPoolSize;
+    private final String serverId;
 
     private DatabaseConfiguration(Builder builder) {
         if (builder.driverClassName != null) {
@@ -35,12 +38,29 @@ public class DatabaseConfiguration implements Serializable {
         }
         username = builder.username.trim();
         password = builder.password.trim();
+        minPoolSize = builder.minPoolSize;
+        maxPoolSize = builder.maxPoolSize;
+        serverId = builder.serverId;
     }
 
     public static Builder newBuilder() {
         return new Builder();
     }
 
+    /**
+     * Create a new {@link Builder} initialized with the values of this configuration
+     */
+    public Builder toBuilder() {
+        return newBuilder()
+            .setDriverClassName(driverClassName)
+            .setJdbcUrl(jdbcUrl)
+            .setUsername(username)
+            .setPassword(password)
+            .setMinPoolSize(minPoolSize)
+            .setMaxPoolSize(maxPoolSize)
+            .setServerId(serverId);
+    }
+
     public String getDriverClassName() {
         return driverClassName;
     }
@@ -53,6 +73,33 @@ public class DatabaseConfiguration implements Serializable {
         return databaseName;
     }
 
+    /**
+     * @return The JDBC URL without database name and parameters, which identifies the database server
+     */
+    public String getServerUrl() {
+        return jdbcUrl.substring(0, jdbcUrl.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Get the id of the database server, which groups the tenants sharing the capacity of a server for admission control.<br/>
+     * Defaults to the server URL. A JDBC URL without a '/' (e.g. H2 or Oracle thin) has no server URL, then it defaults to the JDBC URL.
+     *
+     * @return The configured server id, or the default
+     */
+    public String getServerId() {
+        if (serverId != null) {
+            return serverId;
+        }
+        return jdbcUrl.indexOf('/') >= 0 ? getServerUrl() : jdbcUrl;
+    }
+
+    /**
+     * @return The server id set on the builder, null if the default is used
+     */
+    String getConfiguredServerId() {
+        return serverId;
+    }
+
     public String getUsername() {
         return username;
     }
@@ -61,6 +108,20 @@ public class DatabaseConfiguration implements Serializable {
         return password;
     }
 
+    /**
+     * @return The minimum pool size hint, null if not set
+     */
+    public Integer getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    /**
+     * @return The maximum pool size hint, null if not set
+     */
+    public Integer getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -69,12 +130,15 @@ public class DatabaseConfiguration implements Serializable {
         return Objects.equals(driverClassName, that.driverClassName) &&
             Objects.equals(jdbcUrl, that.jdbcUrl) &&
             Objects.equals(username, that.username) &&
-            Objects.equals(password, that.password);
+            Objects.equals(password, that.password) &&
+            Objects.equals(minPoolSize, that.minPoolSize) &&
+            Objects.equals(maxPoolSize, that.maxPoolSize) &&
+            Objects.equals(serverId, that.serverId);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(driverClassName, jdbcUrl, username, password);
+        return Objects.hash(driverClassName, jdbcUrl, username, password, minPoolSize, maxPoolSize, serverId);
     }
 
     @Override
@@ -84,6 +148,9 @@ public class DatabaseConfiguration implements Serializable {
             ", host='" + jdbcUrl + '\'' +
             ", username='" + username + '\'' +
             ", password='" + (password == null || password.isEmpty() ? "not set" : "set") + '\'' +
+            ", minPoolSize=" + minPoolSize +
+            ", maxPoolSize=" + maxPoolSize +
+            ", serverId='" + serverId + '\'' +
             '}';
     }
 
@@ -93,6 +160,9 @@ public class DatabaseConfiguration implements Serializable {
         private String databaseName;
         private String username;
         private String password;
+        private Integer minPoolSize;
+        private Integer maxPoolSize;
+        private String serverId;
 
         private Builder() {
         }
@@ -125,6 +195,30 @@ public class DatabaseConfiguration implements Serializable {
             return this;
         }
 
+        /**
+         * Set the minimum pool size hint, used by the pool sizing of the registry
+         */
+        public Builder setMinPoolSize(Integer minPoolSize) {
+            this.minPoolSize = minPoolSize;
+            return this;
+        }
+
+        /**
+         * Set the maximum pool size hint, used by the pool sizing of the registry
+         */
+        public Builder setMaxPoolSize(Integer maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+            return this;
+        }
+
+        /**
+         * Set the id of the database server, e.g. to let tenants with different JDBC URLs of one server share its capacity
+         */
+        public Builder setServerId(String serverId) {
+            this.serverId = serverId;
+            return this;
+        }
+
         public Builder copy() {
             Builder builder = new Builder();
             builder.driverClassName = driverClassName;
@@ -132,6 +226,9 @@ public class DatabaseConfiguration implements Serializable {
             builder.databaseName = databaseName;
             builder.username = username;
             builder.password = password;
+            builder.minPoolSize = minPoolSize;
+            builder.maxPoolSize = maxPoolSize;
+            builder.serverId = serverId;
             return builder;
         }
 
@@ -139,6 +236,10 @@ public class DatabaseConfiguration implements Serializable {
             Objects.requireNonNull(jdbcUrl, "JDBC URL is required");
             Objects.requireNonNull(username, "Username is required");
             Objects.requireNonNull(password, "Password is required");
+            if ((minPoolSize != null && minPoolSize < 0) || (maxPoolSize != null && maxPoolSize < 1)
+                || (minPoolSize != null && maxPoolSize != null && minPoolSize > maxPoolSize)) {
+                throw new IllegalArgumentException("Invalid pool size hints");
+            }
             return new DatabaseConfiguration(this);
         }
     }
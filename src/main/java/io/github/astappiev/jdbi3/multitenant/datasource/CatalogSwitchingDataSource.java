@@ -0,0 +1,100 @@
+package io.github.astappiev.jdbi3.multitenant.datasource;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Objects;
+
+/**
+ * A {@link DataSource} sharing the pool of another {@link DataSource}, which selects a tenant database on every borrowed connection.<br/>
+ * Closing this {@link DataSource} does not close the shared pool.
+ */
+public class CatalogSwitchingDataSource implements DataSource {
+
+    private final DataSource dataSource;
+    private final String databaseName;
+    private final boolean useSchema;
+
+    /**
+     * @param dataSource   The shared {@link DataSource}
+     * @param databaseName The database (or schema) to select
+     * @param useSchema    true to use {@link Connection#setSchema(String)}, otherwise {@link Connection#setCatalog(String)}
+     */
+    public CatalogSwitchingDataSource(DataSource dataSource, String databaseName, boolean useSchema) {
+        this.dataSource = Objects.requireNonNull(dataSource);
+        this.databaseName = Objects.requireNonNull(databaseName);
+        this.useSchema = useSchema;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return select(dataSource.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return select(dataSource.getConnection(username, password));
+    }
+
+    private Connection select(Connection connection) throws SQLException {
+        try {
+            if (useSchema) {
+                connection.setSchema(databaseName);
+            } else {
+                connection.setCatalog(databaseName);
+            }
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return dataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || dataSource.isWrapperFor(iface);
+    }
+}
@@ -0,0 +1,176 @@
+package io.github.astappiev.jdbi3.multitenant.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A {@link DataSource} proxy that creates the real {@link DataSource} on the first {@link #getConnection()}.<br/>
+ * The real {@link DataSource} is created once, even when requested concurrently, and can be released again
+ * with {@link #releaseIfIdle(Duration, IntSupplier)}. A released {@link DataSource} is re-created on the next connection request.<br/>
+ * Connections are returned as they are, the caller counts the connections in use, see {@link #releaseIfIdle(Duration, IntSupplier)}.
+ */
+public class LazyDataSource implements DataSource, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LazyDataSource.class);
+    private final Supplier<DataSource> dataSourceSupplier;
+    private volatile DataSource delegate;
+    private volatile long lastAccessNanos;
+
+    public LazyDataSource(Supplier<DataSource> dataSourceSupplier) {
+        this.dataSourceSupplier = Objects.requireNonNull(dataSourceSupplier);
+        lastAccessNanos = System.nanoTime();
+    }
+
+    /**
+     * @return true if the real {@link DataSource} is currently created
+     */
+    public boolean isCreated() {
+        return delegate != null;
+    }
+
+    /**
+     * Get the real {@link DataSource} without creating it
+     *
+     * @return The real {@link DataSource} or null if it is not created yet
+     */
+    public DataSource peek() {
+        return delegate;
+    }
+
+    /**
+     * Get the real {@link DataSource}, creates it when it doesn't exist yet
+     *
+     * @return The real {@link DataSource}
+     */
+    public DataSource getDataSource() {
+        DataSource dataSource = delegate;
+        if (dataSource == null) {
+            synchronized (this) {
+                dataSource = delegate;
+                if (dataSource == null) {
+                    logger.debug("Creating lazy data source");
+                    dataSource = Objects.requireNonNull(dataSourceSupplier.get(), "Data source provider returned null");
+                    delegate = dataSource;
+                }
+            }
+        }
+        return dataSource;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = getDataSource().getConnection();
+        lastAccessNanos = System.nanoTime();
+        return connection;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Connection connection = getDataSource().getConnection(username, password);
+        lastAccessNanos = System.nanoTime();
+        return connection;
+    }
+
+    /**
+     * Release the real {@link DataSource} when no connection has been requested for the idleTimeout
+     * and there are no connections in use.
+     *
+     * @param idleTimeout       The minimum idle time
+     * @param activeConnections The number of connections in use. The caller must count a connection before requesting it
+     *                          and until it is closed, e.g. {@code TenantConnectionFactory} of the registry.
+     * @return true if the real {@link DataSource} was released
+     */
+    public boolean releaseIfIdle(Duration idleTimeout, IntSupplier activeConnections) {
+        DataSource dataSource;
+        synchronized (this) {
+            dataSource = delegate;
+            if (dataSource == null || System.nanoTime() - lastAccessNanos < idleTimeout.toNanos()) {
+                return false;
+            }
+
+            // unpublish first, then check the counter: a concurrent getConnection either sees no delegate or is counted
+            delegate = null;
+            if (activeConnections.getAsInt() > 0) {
+                delegate = dataSource;
+                return false;
+            }
+        }
+
+        logger.debug("Releasing idle lazy data source");
+        closeQuietly(dataSource);
+        return true;
+    }
+
+    /**
+     * Release the real {@link DataSource} regardless of connections in use.
+     */
+    @Override
+    public void close() {
+        DataSource dataSource;
+        synchronized (this) {
+            dataSource = delegate;
+            delegate = null;
+        }
+        if (dataSource != null) {
+            closeQuietly(dataSource);
+        }
+    }
+
+    private static void closeQuietly(DataSource dataSource) {
+        if (dataSource instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) dataSource).close();
+            } catch (Exception e) {
+                logger.warn("Failed to close data source", e);
+            }
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return getDataSource().getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        getDataSource().setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        getDataSource().setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return getDataSource().getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return getDataSource().getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return getDataSource().unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || getDataSource().isWrapperFor(iface);
+    }
+}
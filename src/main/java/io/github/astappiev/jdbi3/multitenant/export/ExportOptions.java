@@ -0,0 +1,95 @@
+package io.github.astappiev.jdbi3.multitenant.export;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * The options of a cross-tenant export
+ */
+public class ExportOptions {
+
+    private final int fetchSize;
+    private final int maxOpenCursors;
+    private final boolean transactional;
+    private final Executor executor;
+
+    private ExportOptions(Builder builder) {
+        fetchSize = builder.fetchSize;
+        maxOpenCursors = builder.maxOpenCursors;
+        transactional = builder.transactional;
+        executor = builder.executor;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public int getMaxOpenCursors() {
+        return maxOpenCursors;
+    }
+
+    public boolean isTransactional() {
+        return transactional;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public static final class Builder {
+        private int fetchSize = 1000;
+        private int maxOpenCursors = 4;
+        private boolean transactional = true;
+        private Executor executor;
+
+        private Builder() {
+        }
+
+        /**
+         * Set the number of rows fetched from the database at once. Defaults to 1000.
+         */
+        public Builder setFetchSize(int fetchSize) {
+            this.fetchSize = fetchSize;
+            return this;
+        }
+
+        /**
+         * Set the number of tenants read at the same time. Defaults to 4.
+         */
+        public Builder setMaxOpenCursors(int maxOpenCursors) {
+            this.maxOpenCursors = maxOpenCursors;
+            return this;
+        }
+
+        /**
+         * Set whether each tenant is read in a transaction, which some drivers (e.g. PostgreSQL) require to honor the fetch size.
+         * The transaction is rolled back when the tenant is done. Defaults to true.
+         */
+        public Builder setTransactional(boolean transactional) {
+            this.transactional = transactional;
+            return this;
+        }
+
+        /**
+         * Set the executor reading the rows and signalling the subscriber, required.<br/>
+         * Fetching rows blocks on JDBC, so use a dedicated pool with at least as many threads as open cursors,
+         * e.g. {@code Executors.newFixedThreadPool(4)}, rather than {@link java.util.concurrent.ForkJoinPool#commonPool()}.
+         */
+        public Builder setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public ExportOptions build() {
+            Objects.requireNonNull(executor, "Executor is required");
+            if (fetchSize < 1 || maxOpenCursors < 1) {
+                throw new IllegalArgumentException("Invalid export options");
+            }
+            return new ExportOptions(this);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.astappiev.jdbi3.multitenant.export;
+
+import java.util.Objects;
+
+/**
+ * A row of a cross-tenant export, together with the tenant it was read from
+ *
+ * @param <T> The type of the mapped row
+ */
+public final class TenantRow<T> {
+
+    private final String tenantId;
+    private final T value;
+
+    public TenantRow(String tenantId, T value) {
+        this.tenantId = tenantId;
+        this.value = value;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TenantRow<?> that = (TenantRow<?>) o;
+        return Objects.equals(tenantId, that.tenantId) && Objects.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tenantId, value);
+    }
+
+    @Override
+    public String toString() {
+        return "TenantRow{" +
+            "tenantId='" + tenantId + '\'' +
+            ", value=" + value +
+            '}';
+    }
+}
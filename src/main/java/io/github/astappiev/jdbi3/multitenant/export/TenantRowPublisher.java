@@ -0,0 +1,229 @@
+package io.github.astappiev.jdbi3.multitenant.export;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.result.ResultIterable;
+import org.jdbi.v3.core.result.ResultIterator;
+import org.jdbi.v3.core.statement.SqlStatements;
+import org.jdbi.v3.core.statement.StatementCustomizers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A cold {@link Flow.Publisher} of the rows of a query over many tenants.<br/>
+ * Every subscription reads its own cursors, at most {@link ExportOptions#getMaxOpenCursors()} tenants at the same time,
+ * taking rows round-robin from the open cursors. Rows are only read when the subscriber requested them, so memory stays bounded
+ * by the open cursors and their fetch size. The handle of a tenant is closed as soon as its last row is read, on an error or on cancel.
+ *
+ * @param <T> The type of the mapped row
+ */
+public class TenantRowPublisher<T> implements Flow.Publisher<TenantRow<T>> {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantRowPublisher.class);
+    private final Function<String, Jdbi> jdbiProvider;
+    private final List<String> tenantIds;
+    private final Function<Handle, ResultIterable<T>> query;
+    private final ExportOptions options;
+
+    /**
+     * @param jdbiProvider The provider of the {@link Jdbi} of a tenant id, e.g. {@code JdbiTenantRegistry::getJdbi}
+     * @param tenantIds    The tenants to read, in this order
+     * @param query        The query of a tenant handle, e.g. {@code handle -> handle.createQuery("select * from orders").mapToBean(Order.class)}
+     * @param options      The export options
+     */
+    public TenantRowPublisher(Function<String, Jdbi> jdbiProvider, Collection<String> tenantIds,
+                              Function<Handle, ResultIterable<T>> query, ExportOptions options) {
+        this.jdbiProvider = Objects.requireNonNull(jdbiProvider, "Jdbi provider is required");
+        this.tenantIds = List.copyOf(tenantIds);
+        this.query = Objects.requireNonNull(query, "Query is required");
+        this.options = Objects.requireNonNull(options, "Options are required");
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super TenantRow<T>> subscriber) {
+        Objects.requireNonNull(subscriber, "Subscriber is required");
+        subscriber.onSubscribe(new ExportSubscription(subscriber));
+    }
+
+    private static final class Cursor<T> {
+        private final String tenantId;
+        private final Handle handle;
+        private final boolean transactional;
+        private ResultIterator<T> iterator;
+
+        private Cursor(String tenantId, Handle handle, boolean transactional) {
+            this.tenantId = tenantId;
+            this.handle = handle;
+            this.transactional = transactional;
+        }
+
+        private void close() {
+            try {
+                if (iterator != null) {
+                    iterator.close();
+                }
+                if (transactional && handle.isInTransaction()) {
+                    handle.rollback();
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to close cursor for {}", tenantId, e);
+            } finally {
+                handle.close();
+                logger.debug("Closed export handle for {}", tenantId);
+            }
+        }
+    }
+
+    /**
+     * Reads the cursors in a drain loop on the executor. The loop runs in one thread at a time,
+     * so the handles are never used concurrently.
+     */
+    private final class ExportSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super TenantRow<T>> subscriber;
+        private final Deque<String> pendingTenants;
+        private final List<Cursor<T>> cursors;
+        private final AtomicLong requested;
+        private final AtomicInteger pendingDrains;
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private boolean done;
+        private int next;
+
+        private ExportSubscription(Flow.Subscriber<? super TenantRow<T>> subscriber) {
+            this.subscriber = subscriber;
+            this.pendingTenants = new ArrayDeque<>(tenantIds);
+            this.cursors = new ArrayList<>(options.getMaxOpenCursors());
+            this.requested = new AtomicLong();
+            this.pendingDrains = new AtomicInteger();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested " + n + " rows, must be positive");
+            } else {
+                requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (pendingDrains.getAndIncrement() == 0) {
+                options.getExecutor().execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = pendingDrains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (done) {
+                return;
+            }
+
+            try {
+                long limit = requested.get();
+                long emitted = 0;
+                while (true) {
+                    if (cancelled) {
+                        done = true;
+                        closeCursors();
+                        return;
+                    }
+                    if (invalidRequest != null) {
+                        fail(invalidRequest);
+                        return;
+                    }
+                    openCursors();
+                    if (cursors.isEmpty()) {
+                        done = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (emitted == limit) {
+                        break;
+                    }
+
+                    if (next >= cursors.size()) {
+                        next = 0;
+                    }
+                    Cursor<T> cursor = cursors.get(next);
+                    TenantRow<T> row = new TenantRow<>(cursor.tenantId, cursor.iterator.next());
+                    if (cursor.iterator.hasNext()) {
+                        next++;
+                    } else {
+                        cursors.remove(next);
+                        cursor.close();
+                    }
+                    subscriber.onNext(row);
+                    emitted++;
+                }
+                if (limit != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+
+        private void openCursors() {
+            while (cursors.size() < options.getMaxOpenCursors() && !pendingTenants.isEmpty()) {
+                String tenantId = pendingTenants.poll();
+                Cursor<T> cursor = new Cursor<>(tenantId, jdbiProvider.apply(tenantId).open(), options.isTransactional());
+                try {
+                    cursor.handle.getConfig(SqlStatements.class).addCustomizer(StatementCustomizers.fetchSize(options.getFetchSize()));
+                    if (cursor.transactional) {
+                        cursor.handle.begin();
+                    }
+                    cursor.iterator = query.apply(cursor.handle).iterator();
+                    // fetching the first row may fail as well, the cursor is not yet closed by closeCursors
+                    if (!cursor.iterator.hasNext()) {
+                        cursor.close();
+                        continue;
+                    }
+                } catch (RuntimeException e) {
+                    cursor.close();
+                    throw e;
+                }
+
+                logger.debug("Opened export cursor for {}", tenantId);
+                cursors.add(cursor);
+            }
+        }
+
+        private void closeCursors() {
+            cursors.forEach(Cursor::close);
+            cursors.clear();
+            pendingTenants.clear();
+        }
+
+        private void fail(Throwable e) {
+            done = true;
+            closeCursors();
+            subscriber.onError(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package io.github.astappiev.jdbi3.multitenant.pool;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Sizes a pool by the observed peak concurrency plus headroom, and grows it while borrowing a connection takes too long.<br/>
+ * The result is bounded by the pool size hints of the tenant configuration, or by the defaults of this strategy.
+ */
+public class DemandPoolSizingStrategy implements PoolSizingStrategy {
+
+    private final double headroom;
+    private final Duration waitThreshold;
+    private final int growthStep;
+    private final int minSize;
+    private final int maxSize;
+
+    private DemandPoolSizingStrategy(Builder builder) {
+        headroom = builder.headroom;
+        waitThreshold = builder.waitThreshold;
+        growthStep = builder.growthStep;
+        minSize = builder.minSize;
+        maxSize = builder.maxSize;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    @Override
+    public int recommend(PoolStatistics statistics) {
+        int size = (int) Math.ceil(statistics.getPeakActiveHandles() * headroom);
+        if (statistics.getAverageWait().compareTo(waitThreshold) > 0) {
+            size = Math.max(size, Math.max(statistics.getCurrentSize(), statistics.getPeakActiveHandles()) + growthStep);
+        }
+
+        int min = statistics.getMinPoolSize() != null ? statistics.getMinPoolSize() : minSize;
+        int max = statistics.getMaxPoolSize() != null ? statistics.getMaxPoolSize() : maxSize;
+        return Math.max(min, Math.min(max, size));
+    }
+
+    public static final class Builder {
+        private double headroom = 1.25;
+        private Duration waitThreshold = Duration.ofMillis(10);
+        private int growthStep = 2;
+        private int minSize = 0;
+        private int maxSize = 20;
+
+        private Builder() {
+        }
+
+        /**
+         * Set the factor applied to the peak concurrency. Defaults to 1.25.
+         */
+        public Builder setHeadroom(double headroom) {
+            this.headroom = headroom;
+            return this;
+        }
+
+        /**
+         * Set the average wait for a connection above which the pool is grown. Defaults to 10 ms.
+         */
+        public Builder setWaitThreshold(Duration waitThreshold) {
+            this.waitThreshold = waitThreshold;
+            return this;
+        }
+
+        /**
+         * Set the number of connections added when the wait threshold is exceeded. Defaults to 2.
+         */
+        public Builder setGrowthStep(int growthStep) {
+            this.growthStep = growthStep;
+            return this;
+        }
+
+        /**
+         * Set the minimum size for tenants without a pool size hint. Defaults to 0.
+         */
+        public Builder setMinSize(int minSize) {
+            this.minSize = minSize;
+            return this;
+        }
+
+        /**
+         * Set the maximum size for tenants without a pool size hint. Defaults to 20.
+         */
+        public Builder setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public DemandPoolSizingStrategy build() {
+            Objects.requireNonNull(waitThreshold, "Wait threshold is required");
+            if (headroom < 1 || growthStep < 0 || minSize < 0 || maxSize < Math.max(1, minSize)) {
+                throw new IllegalArgumentException("Invalid pool sizing bounds");
+            }
+            return new DemandPoolSizingStrategy(this);
+        }
+    }
+}
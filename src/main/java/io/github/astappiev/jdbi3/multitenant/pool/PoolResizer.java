@@ -0,0 +1,23 @@
+package io.github.astappiev.jdbi3.multitenant.pool;
+
+import javax.sql.DataSource;
+
+/**
+ * Contract for resizing a pool, e.g. for HikariCP:
+ * <pre>{@code
+ * (dataSource, size) -> dataSource.unwrap(HikariDataSource.class).getHikariConfigMXBean().setMaximumPoolSize(size)
+ * }</pre>
+ */
+@FunctionalInterface
+public interface PoolResizer {
+
+    /**
+     * Resize a pool
+     *
+     * @param dataSource The pool as created by the data source provider
+     * @param size       The new maximum number of connections, at least 1
+     * @throws Exception if the pool cannot be resized
+     */
+    void resize(DataSource dataSource, int size) throws Exception;
+
+}
@@ -0,0 +1,17 @@
+package io.github.astappiev.jdbi3.multitenant.pool;
+
+/**
+ * Contract for all pool sizing strategies
+ */
+@FunctionalInterface
+public interface PoolSizingStrategy {
+
+    /**
+     * Recommend the number of connections a tenant needs
+     *
+     * @param statistics The handle usage of the tenant since the previous recommendation
+     * @return The recommended number of connections, may be 0 for an idle tenant
+     */
+    int recommend(PoolStatistics statistics);
+
+}
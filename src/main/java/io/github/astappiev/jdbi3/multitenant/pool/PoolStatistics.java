@@ -0,0 +1,179 @@
+package io.github.astappiev.jdbi3.multitenant.pool;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The handle usage of a tenant, or of all tenants of a shard pool, observed since the previous sample
+ */
+public class PoolStatistics {
+
+    private final String tenantId;
+    private final int activeHandles;
+    private final int peakActiveHandles;
+    private final long acquisitions;
+    private final Duration averageWait;
+    private final Duration maxWait;
+    private final int currentSize;
+    private final Integer minPoolSize;
+    private final Integer maxPoolSize;
+
+    private PoolStatistics(Builder builder) {
+        tenantId = builder.tenantId;
+        activeHandles = builder.activeHandles;
+        peakActiveHandles = builder.peakActiveHandles;
+        acquisitions = builder.acquisitions;
+        averageWait = builder.averageWait;
+        maxWait = builder.maxWait;
+        currentSize = builder.currentSize;
+        minPoolSize = builder.minPoolSize;
+        maxPoolSize = builder.maxPoolSize;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The tenant id, or "shard:" and the shard id for the combined statistics of a shard pool
+     */
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * @return The number of handles in use at the time of the sample
+     */
+    public int getActiveHandles() {
+        return activeHandles;
+    }
+
+    /**
+     * @return The highest number of handles in use at the same time
+     */
+    public int getPeakActiveHandles() {
+        return peakActiveHandles;
+    }
+
+    /**
+     * @return The number of connections borrowed from the pool
+     */
+    public long getAcquisitions() {
+        return acquisitions;
+    }
+
+    /**
+     * @return The average time it took to borrow a connection from the pool
+     */
+    public Duration getAverageWait() {
+        return averageWait;
+    }
+
+    /**
+     * @return The longest time it took to borrow a connection from the pool
+     */
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * @return The last size applied to the pool, 0 if it was not resized yet
+     */
+    public int getCurrentSize() {
+        return currentSize;
+    }
+
+    /**
+     * @return The minimum pool size hint of the tenant configuration, null if not set
+     */
+    public Integer getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    /**
+     * @return The maximum pool size hint of the tenant configuration, null if not set
+     */
+    public Integer getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStatistics{" +
+            "tenantId='" + tenantId + '\'' +
+            ", activeHandles=" + activeHandles +
+            ", peakActiveHandles=" + peakActiveHandles +
+            ", acquisitions=" + acquisitions +
+            ", averageWait=" + averageWait +
+            ", maxWait=" + maxWait +
+            ", currentSize=" + currentSize +
+            '}';
+    }
+
+    public static final class Builder {
+        private String tenantId;
+        private int activeHandles;
+        private int peakActiveHandles;
+        private long acquisitions;
+        private Duration averageWait = Duration.ZERO;
+        private Duration maxWait = Duration.ZERO;
+        private int currentSize;
+        private Integer minPoolSize;
+        private Integer maxPoolSize;
+
+        private Builder() {
+        }
+
+        public Builder setTenantId(String tenantId) {
+            this.tenantId = tenantId;
+            return this;
+        }
+
+        public Builder setActiveHandles(int activeHandles) {
+            this.activeHandles = activeHandles;
+            return this;
+        }
+
+        public Builder setPeakActiveHandles(int peakActiveHandles) {
+            this.peakActiveHandles = peakActiveHandles;
+            return this;
+        }
+
+        public Builder setAcquisitions(long acquisitions) {
+            this.acquisitions = acquisitions;
+            return this;
+        }
+
+        public Builder setAverageWait(Duration averageWait) {
+            this.averageWait = averageWait;
+            return this;
+        }
+
+        public Builder setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+            return this;
+        }
+
+        public Builder setCurrentSize(int currentSize) {
+            this.currentSize = currentSize;
+            return this;
+        }
+
+        public Builder setMinPoolSize(Integer minPoolSize) {
+            this.minPoolSize = minPoolSize;
+            return this;
+        }
+
+        public Builder setMaxPoolSize(Integer maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+            return this;
+        }
+
+        public PoolStatistics build() {
+            Objects.requireNonNull(tenantId, "Tenant id is required");
+            Objects.requireNonNull(averageWait, "Average wait is required");
+            Objects.requireNonNull(maxWait, "Max wait is required");
+            return new PoolStatistics(this);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package io.github.astappiev.jdbi3.multitenant.profile;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-memory, decaying count-min sketch of access frequencies.<br/>
+ * Every key increments one counter per row, the estimate is the minimum of those counters. After sampleSize increments
+ * all counters are halved, so the estimates follow recent traffic. Updates are lock-free, and for large sample sizes the
+ * decay is only checked on a random subset of increments, so a busy sketch may overshoot sampleSize by a small margin.
+ */
+public class AccessFrequencySketch {
+
+    private static final int DEFAULT_WIDTH = 1024;
+    private static final int DEFAULT_DEPTH = 4;
+    private static final long DEFAULT_SAMPLE_SIZE = 10 * DEFAULT_WIDTH;
+    private static final int MAX_DECAY_CHECK_INTERVAL = 64;
+
+    private final int depth;
+    private final int mask;
+    private final long sampleSize;
+    private final AtomicLongArray counters;
+    private final int decayCheckMask;
+    private final LongAdder additions;
+    private final AtomicBoolean decaying;
+
+    public AccessFrequencySketch() {
+        this(DEFAULT_WIDTH, DEFAULT_DEPTH, DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * @param width      The number of counters per row, rounded up to a power of two
+     * @param depth      The number of rows
+     * @param sampleSize The number of increments after which all counters are halved
+     */
+    public AccessFrequencySketch(int width, int depth, long sampleSize) {
+        if (width < 1 || depth < 1 || sampleSize < 1) {
+            throw new IllegalArgumentException("Width, depth and sample size must be positive");
+        }
+        int tableWidth = Integer.highestOneBit(width) == width ? width : Integer.highestOneBit(width) << 1;
+        this.depth = depth;
+        this.mask = tableWidth - 1;
+        this.sampleSize = sampleSize;
+        this.counters = new AtomicLongArray(tableWidth * depth);
+        this.additions = new LongAdder();
+        this.decaying = new AtomicBoolean();
+        // summing the adder reads every cell, doing it on each increment would cost more than the increment itself, so
+        // only every ~interval-th increment checks it; small sample sizes keep an exact check
+        long interval = Math.max(1, Math.min(MAX_DECAY_CHECK_INTERVAL, sampleSize / MAX_DECAY_CHECK_INTERVAL));
+        this.decayCheckMask = Integer.highestOneBit((int) interval) - 1;
+    }
+
+    /**
+     * Record one access of key
+     *
+     * @param key The key, e.g. a tenant id
+     */
+    public void increment(String key) {
+        addToCounters(key, 1);
+        additions.increment();
+        if ((ThreadLocalRandom.current().nextInt() & decayCheckMask) == 0) {
+            decayIfFull();
+        }
+    }
+
+    /**
+     * Seed the sketch with previously exported frequencies, e.g. from an access profile.<br/>
+     * The counts are added in one step, so no entry decays more than another. If they sum up to more than half the
+     * sample size they are scaled down proportionally, which keeps their ratios and leaves room for live traffic
+     * before the first decay.
+     *
+     * @param counts The frequencies by key, non-positive counts are ignored
+     */
+    public void seed(Map<String, Long> counts) {
+        double total = 0;
+        for (long count : counts.values()) {
+            total += Math.max(0, count);
+        }
+        double scale = total > sampleSize / 2 ? (sampleSize / 2) / total : 1;
+
+        long seeded = 0;
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            long count = Math.round(Math.max(0, entry.getValue()) * scale);
+            if (count > 0) {
+                addToCounters(entry.getKey(), count);
+                seeded += count;
+            }
+        }
+        additions.add(seeded);
+        decayIfFull();
+    }
+
+    /**
+     * Get the estimated access frequency of key, never less than the real one since the last decay
+     *
+     * @param key The key, e.g. a tenant id
+     * @return The estimated frequency
+     */
+    public long estimate(String key) {
+        long hash = mix(key.hashCode());
+        long step = mix(hash) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(row, hash + row * step)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Halve all counters, this happens automatically every sampleSize increments
+     */
+    public void decay() {
+        long current = additions.sum();
+        additions.add(-(current - current / 2));
+        halve();
+    }
+
+    private void addToCounters(String key, long count) {
+        long hash = mix(key.hashCode());
+        long step = mix(hash) | 1;
+        for (int row = 0; row < depth; row++) {
+            counters.addAndGet(index(row, hash + row * step), count);
+        }
+    }
+
+    private void decayIfFull() {
+        if (additions.sum() >= sampleSize && decaying.compareAndSet(false, true)) {
+            try {
+                // re-check under the flag, another thread may have just decayed
+                if (additions.sum() >= sampleSize) {
+                    decay();
+                }
+            } finally {
+                decaying.set(false);
+            }
+        }
+    }
+
+    private void halve() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, value -> value >>> 1);
+        }
+    }
+
+    private int index(int row, long hash) {
+        return row * (mask + 1) + (int) (hash & mask);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,312 @@
+package io.github.astappiev.jdbi3.multitenant.resolver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A {@link TenantResolver} which derives the tenant from a request context.<br/>
+ * The extractors are tried in order, the key of the first one which finds a tenant wins. Looking up the tenant of a key is expected to be expensive,
+ * so the results are memoized, unknown keys included, in a bounded cache with a time to live, and concurrent misses of a key wait for a single lookup.
+ * If no extractor finds a tenant, the default tenant is used.
+ * The resolved tenant is kept per thread, like in {@link ThreadLocalTenantResolver}.
+ *
+ * @param <C> The type of the request context, e.g. {@code HttpServletRequest}
+ */
+public class RequestTenantResolver<C> implements TenantResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestTenantResolver.class);
+    private final List<Step<C>> steps;
+    private final String defaultTenant;
+    private final int maxCacheSize;
+    private final long cacheTtlNanos;
+    private final long negativeCacheTtlNanos;
+    private final ThreadLocal<String> currentTenantHolder;
+    private final ConcurrentMap<CacheKey, Memo> memoMap;
+    private final ConcurrentMap<CacheKey, CompletableFuture<String>> pendingLookupMap;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    private RequestTenantResolver(Builder<C> builder) {
+        steps = List.copyOf(builder.steps);
+        defaultTenant = builder.defaultTenant;
+        maxCacheSize = builder.maxCacheSize;
+        cacheTtlNanos = builder.cacheTtl.toNanos();
+        negativeCacheTtlNanos = builder.negativeCacheTtl.toNanos();
+        currentTenantHolder = ThreadLocal.withInitial(() -> defaultTenant);
+        memoMap = new ConcurrentHashMap<>();
+        pendingLookupMap = new ConcurrentHashMap<>();
+        hits = new LongAdder();
+        misses = new LongAdder();
+    }
+
+    public static <C> Builder<C> newBuilder() {
+        return new Builder<>();
+    }
+
+    @Override
+    public String get() {
+        return currentTenantHolder.get();
+    }
+
+    @Override
+    public String getDefaultTenant() {
+        return defaultTenant;
+    }
+
+    /**
+     * Resolve the tenant of context and make it the current tenant of this thread
+     *
+     * @param context The request context
+     * @return The resolved tenant
+     */
+    public String setCurrentContext(C context) {
+        String tenantId = resolve(context);
+        currentTenantHolder.set(tenantId);
+        return tenantId;
+    }
+
+    public void reset() {
+        currentTenantHolder.set(defaultTenant);
+    }
+
+    /**
+     * Resolve the tenant of context without changing the current tenant
+     *
+     * @param context The request context
+     * @return The tenant of the first extractor with a known key, otherwise the default tenant
+     */
+    public String resolve(C context) {
+        for (Step<C> step : steps) {
+            String key = step.extractor.extract(context);
+            if (key == null) {
+                continue;
+            }
+            String tenantId = lookup(step, key);
+            if (tenantId != null) {
+                return tenantId;
+            }
+        }
+        return defaultTenant;
+    }
+
+    private String lookup(Step<C> step, String key) {
+        CacheKey cacheKey = new CacheKey(step.name, key);
+        Memo memo = memoMap.get(cacheKey);
+        if (memo != null && System.nanoTime() - memo.expiresAtNanos < 0) {
+            hits.increment();
+            return memo.tenantId;
+        }
+
+        CompletableFuture<String> lookup = new CompletableFuture<>();
+        CompletableFuture<String> pending = pendingLookupMap.putIfAbsent(cacheKey, lookup);
+        if (pending != null) {
+            hits.increment();
+            return await(pending);
+        }
+        try {
+            // the previous lookup may have been memoized and unregistered between the check above and putIfAbsent
+            long now = System.nanoTime();
+            memo = memoMap.get(cacheKey);
+            if (memo != null && now - memo.expiresAtNanos < 0) {
+                hits.increment();
+                lookup.complete(memo.tenantId);
+                return memo.tenantId;
+            }
+
+            misses.increment();
+            String tenantId = step.lookup.apply(key);
+            logger.debug("Looked up {} key {}: {}", step.name, key, tenantId);
+            memoMap.put(cacheKey, new Memo(tenantId, now + (tenantId != null ? cacheTtlNanos : negativeCacheTtlNanos)));
+            if (memoMap.size() > maxCacheSize) {
+                evict(now);
+            }
+            lookup.complete(tenantId);
+            return tenantId;
+        } catch (RuntimeException | Error e) {
+            lookup.completeExceptionally(e);
+            throw e;
+        } finally {
+            // unregistered only after memoizing, so later misses find the memo instead of looking up again
+            pendingLookupMap.remove(cacheKey, lookup);
+        }
+    }
+
+    private static String await(CompletableFuture<String> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            // the failure of the lookup itself, as if this thread had looked up the key
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void evict(long now) {
+        memoMap.values().removeIf(memo -> now - memo.expiresAtNanos >= 0);
+        // still too large, drop arbitrary entries down to 90% of the bound
+        Iterator<CacheKey> iterator = memoMap.keySet().iterator();
+        int target = maxCacheSize - maxCacheSize / 10;
+        while (memoMap.size() > target && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Forget the tenant of a key, e.g. after an API key was revoked
+     *
+     * @param extractorName The name of the extractor of the key
+     * @param key           The key
+     */
+    public void invalidate(String extractorName, String key) {
+        memoMap.remove(new CacheKey(extractorName, key));
+    }
+
+    public void invalidateAll() {
+        memoMap.clear();
+    }
+
+    /**
+     * @return The number of memoized keys
+     */
+    public int getCacheSize() {
+        return memoMap.size();
+    }
+
+    public long getCacheHits() {
+        return hits.sum();
+    }
+
+    public long getCacheMisses() {
+        return misses.sum();
+    }
+
+    private static final class Step<C> {
+        private final String name;
+        private final TenantKeyExtractor<C> extractor;
+        private final Function<String, String> lookup;
+
+        private Step(String name, TenantKeyExtractor<C> extractor, Function<String, String> lookup) {
+            this.name = name;
+            this.extractor = extractor;
+            this.lookup = lookup;
+        }
+    }
+
+    private static final class CacheKey {
+        private final String extractorName;
+        private final String key;
+
+        private CacheKey(String extractorName, String key) {
+            this.extractorName = extractorName;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CacheKey that = (CacheKey) o;
+            return extractorName.equals(that.extractorName) && key.equals(that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * extractorName.hashCode() + key.hashCode();
+        }
+    }
+
+    private static final class Memo {
+        private final String tenantId;
+        private final long expiresAtNanos;
+
+        private Memo(String tenantId, long expiresAtNanos) {
+            this.tenantId = tenantId;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    public static final class Builder<C> {
+        private final List<Step<C>> steps = new ArrayList<>();
+        private String defaultTenant;
+        private int maxCacheSize = 10000;
+        private Duration cacheTtl = Duration.ofMinutes(10);
+        private Duration negativeCacheTtl = Duration.ofMinutes(1);
+
+        private Builder() {
+        }
+
+        /**
+         * Add an extractor, tried after the ones added before
+         *
+         * @param name      The name of the extractor, keys of different extractors are memoized separately
+         * @param extractor Extracts the key from the request context
+         * @param lookup    Looks up the tenant of a key, returns null for an unknown key
+         */
+        public Builder<C> addExtractor(String name, TenantKeyExtractor<C> extractor, Function<String, String> lookup) {
+            steps.add(new Step<>(Objects.requireNonNull(name, "Name is required"),
+                Objects.requireNonNull(extractor, "Extractor is required"),
+                Objects.requireNonNull(lookup, "Lookup is required")));
+            return this;
+        }
+
+        public Builder<C> setDefaultTenant(String defaultTenant) {
+            this.defaultTenant = defaultTenant;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of memoized keys. Defaults to 10000.
+         */
+        public Builder<C> setMaxCacheSize(int maxCacheSize) {
+            this.maxCacheSize = maxCacheSize;
+            return this;
+        }
+
+        /**
+         * Set how long the tenant of a key is memoized. Defaults to 10 minutes.
+         */
+        public Builder<C> setCacheTtl(Duration cacheTtl) {
+            this.cacheTtl = cacheTtl;
+            return this;
+        }
+
+        /**
+         * Set how long an unknown key is memoized. Defaults to 1 minute.
+         */
+        public Builder<C> setNegativeCacheTtl(Duration negativeCacheTtl) {
+            this.negativeCacheTtl = negativeCacheTtl;
+            return this;
+        }
+
+        public RequestTenantResolver<C> build() {
+            Objects.requireNonNull(defaultTenant, "Default tenant is required");
+            Objects.requireNonNull(cacheTtl, "Cache TTL is required");
+            Objects.requireNonNull(negativeCacheTtl, "Negative cache TTL is required");
+            if (steps.isEmpty()) {
+                throw new IllegalStateException("At least one extractor is required");
+            }
+            if (maxCacheSize < 1) {
+                throw new IllegalArgumentException("Invalid cache size");
+            }
+            return new RequestTenantResolver<>(this);
+        }
+    }
+}
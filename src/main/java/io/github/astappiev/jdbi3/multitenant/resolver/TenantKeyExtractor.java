@@ -0,0 +1,17 @@
+package io.github.astappiev.jdbi3.multitenant.resolver;
+
+/**
+ * Extracts a key identifying the tenant from a request context, e.g. the host name, an API key or a JWT claim
+ *
+ * @param <C> The type of the request context
+ */
+@FunctionalInterface
+public interface TenantKeyExtractor<C> {
+
+    /**
+     * @param context The request context
+     * @return The key, null if the context does not carry one
+     */
+    String extract(C context);
+
+}
@@ -1,8 +1,10 @@
 package io.github.astappiev.jdbi3.multitenant.resolver;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 public class ThreadLocalTenantResolver implements TenantResolver {
 
-    private static ThreadLocalTenantResolver instance;
+    private static final AtomicReference<ThreadLocalTenantResolver> instance = new AtomicReference<>();
     private final ThreadLocal<String> currentTenantHolder;
     private final String defaultTenant;
 
@@ -16,11 +18,11 @@ public class ThreadLocalTenantResolver implements TenantResolver {
     }
 
     public static ThreadLocalTenantResolver getInstance() {
-        return instance;
+        return instance.get();
     }
 
     public static void releaseInstance() {
-        instance = null;
+        instance.set(null);
     }
 
     @Override
@@ -52,13 +54,24 @@ public class ThreadLocalTenantResolver implements TenantResolver {
             return this;
         }
 
+        /**
+         * Create a new resolver with its own current tenant per thread, independent of the default one
+         */
+        public ThreadLocalTenantResolver build() {
+            return new ThreadLocalTenantResolver(this);
+        }
+
+        /**
+         * Create the resolver and publish it as the default one, returned by {@link ThreadLocalTenantResolver#getInstance()}
+         *
+         * @throws IllegalStateException if a default resolver is already initialized
+         */
         public ThreadLocalTenantResolver init() {
-            if (instance == null) {
-                instance = new ThreadLocalTenantResolver(this);
-            } else {
+            ThreadLocalTenantResolver resolver = build();
+            if (!instance.compareAndSet(null, resolver)) {
                 throw new IllegalStateException("ThreadLocalTenantResolver already initialized");
             }
-            return instance;
+            return resolver;
         }
     }
 }
@@ -0,0 +1,276 @@
+package io.github.astappiev.jdbi3.multitenant.shard;
+
+import io.github.astappiev.jdbi3.multitenant.configuration.DatabaseConfiguration;
+import io.github.astappiev.jdbi3.multitenant.configuration.DatabaseConfigurationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A catalog of database servers (shards) which host tenants as separate databases or schemas.<br/>
+ * Tenants are mapped to shards by an explicit override or by consistent hashing, so adding a shard moves only
+ * the tenants which are now closest to the new shard. Lookups are cached and lock-free, changes to the catalog
+ * publish a new immutable mapping state.
+ */
+public class ShardCatalog {
+
+    private final int virtualNodes;
+    private final boolean useSchema;
+    private final Function<String, String> databaseNameProvider;
+    private volatile State state;
+
+    private ShardCatalog(Builder builder) {
+        virtualNodes = builder.virtualNodes;
+        useSchema = builder.useSchema;
+        databaseNameProvider = builder.databaseNameProvider;
+        state = new State(new LinkedHashMap<>(builder.shards), new HashMap<>(builder.overrides), virtualNodes);
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the shard id for tenantId
+     *
+     * @param tenantId The tenant id
+     * @return The id of the shard hosting the tenant
+     */
+    public String getShardId(String tenantId) {
+        return state.getShardId(tenantId);
+    }
+
+    /**
+     * Get the server configuration of a shard
+     *
+     * @param shardId The shard id
+     * @return The {@link DatabaseConfiguration} of the shard
+     */
+    public DatabaseConfiguration getShardConfiguration(String shardId) {
+        DatabaseConfiguration configuration = state.shards.get(shardId);
+        if (configuration == null) {
+            throw new DatabaseConfigurationException("Cannot find shard " + shardId);
+        }
+        return configuration;
+    }
+
+    /**
+     * Get the database name of a tenant on its shard
+     *
+     * @param tenantId The tenant id
+     * @return The database (or schema) name
+     */
+    public String getDatabaseName(String tenantId) {
+        return databaseNameProvider.apply(tenantId);
+    }
+
+    /**
+     * Get the {@link DatabaseConfiguration} of a tenant, which is the configuration of its shard with the tenant database name
+     *
+     * @param tenantId The tenant id
+     * @return The tenant {@link DatabaseConfiguration}
+     */
+    public DatabaseConfiguration getTenantConfiguration(String tenantId) {
+        return getShardConfiguration(getShardId(tenantId)).toBuilder()
+            .setDatabaseName(getDatabaseName(tenantId))
+            .build();
+    }
+
+    public Set<String> getShardIds() {
+        return state.shards.keySet();
+    }
+
+    /**
+     * @return true when the tenant database is selected with {@link java.sql.Connection#setSchema(String)} instead of {@link java.sql.Connection#setCatalog(String)}
+     */
+    public boolean isUseSchema() {
+        return useSchema;
+    }
+
+    /**
+     * Add a new shard or replace the configuration of an existing one.<br/>
+     * Only the tenants which are closest to the new shard on the hash ring are moved to it.
+     *
+     * @param shardId       The shard id
+     * @param configuration The server configuration of the shard
+     */
+    public synchronized void addShard(String shardId, DatabaseConfiguration configuration) {
+        Map<String, DatabaseConfiguration> shards = new LinkedHashMap<>(state.shards);
+        shards.put(Objects.requireNonNull(shardId), Objects.requireNonNull(configuration));
+        state = new State(shards, state.overrides, virtualNodes);
+    }
+
+    /**
+     * Pin a tenant to a shard, regardless of its hash
+     *
+     * @param tenantId The tenant id
+     * @param shardId  The shard id
+     */
+    public synchronized void setOverride(String tenantId, String shardId) {
+        if (!state.shards.containsKey(shardId)) {
+            throw new DatabaseConfigurationException("Cannot find shard " + shardId);
+        }
+        Map<String, String> overrides = new HashMap<>(state.overrides);
+        overrides.put(Objects.requireNonNull(tenantId), shardId);
+        state = new State(state.shards, overrides, state.ring);
+    }
+
+    public synchronized void removeOverride(String tenantId) {
+        Map<String, String> overrides = new HashMap<>(state.overrides);
+        if (overrides.remove(tenantId) != null) {
+            state = new State(state.shards, overrides, state.ring);
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a hash with a murmur3 finalizer, stable across JVMs.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * An immutable mapping state, replaced as a whole on every change of the catalog.
+     */
+    private static final class State {
+        private final Map<String, DatabaseConfiguration> shards;
+        private final Map<String, String> overrides;
+        private final Ring ring;
+        private final ConcurrentHashMap<String, String> cache;
+
+        private State(Map<String, DatabaseConfiguration> shards, Map<String, String> overrides, int virtualNodes) {
+            this(shards, overrides, new Ring(shards.keySet(), virtualNodes));
+        }
+
+        private State(Map<String, DatabaseConfiguration> shards, Map<String, String> overrides, Ring ring) {
+            this.shards = Collections.unmodifiableMap(shards);
+            this.overrides = Collections.unmodifiableMap(overrides);
+            this.ring = ring;
+            this.cache = new ConcurrentHashMap<>();
+        }
+
+        private String getShardId(String tenantId) {
+            String shardId = cache.get(tenantId);
+            if (shardId == null) {
+                shardId = overrides.get(tenantId);
+                if (shardId == null) {
+                    shardId = ring.locate(hash(tenantId));
+                }
+                cache.putIfAbsent(tenantId, shardId);
+            }
+            return shardId;
+        }
+    }
+
+    private static final class Ring {
+        private final long[] points;
+        private final String[] shardIds;
+
+        private Ring(Set<String> shards, int virtualNodes) {
+            long[][] nodes = new long[shards.size() * virtualNodes][];
+            String[] owners = new String[nodes.length];
+            int i = 0;
+            for (String shardId : shards) {
+                for (int v = 0; v < virtualNodes; v++, i++) {
+                    nodes[i] = new long[]{hash(shardId + "#" + v), i};
+                    owners[i] = shardId;
+                }
+            }
+            Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+
+            points = new long[nodes.length];
+            shardIds = new String[nodes.length];
+            for (int n = 0; n < nodes.length; n++) {
+                points[n] = nodes[n][0];
+                shardIds[n] = owners[(int) nodes[n][1]];
+            }
+        }
+
+        private String locate(long hash) {
+            if (points.length == 0) {
+                throw new DatabaseConfigurationException("Shard catalog is empty");
+            }
+            int index = Arrays.binarySearch(points, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return shardIds[index == points.length ? 0 : index];
+        }
+    }
+
+    public static final class Builder {
+        private final Map<String, DatabaseConfiguration> shards = new LinkedHashMap<>();
+        private final Map<String, String> overrides = new HashMap<>();
+        private int virtualNodes = 128;
+        private boolean useSchema;
+        private Function<String, String> databaseNameProvider = Function.identity();
+
+        private Builder() {
+        }
+
+        public Builder addShard(String shardId, DatabaseConfiguration configuration) {
+            shards.put(Objects.requireNonNull(shardId), Objects.requireNonNull(configuration));
+            return this;
+        }
+
+        public Builder setOverride(String tenantId, String shardId) {
+            overrides.put(Objects.requireNonNull(tenantId), Objects.requireNonNull(shardId));
+            return this;
+        }
+
+        /**
+         * Set the number of points per shard on the hash ring. More points give a more even distribution.
+         */
+        public Builder setVirtualNodes(int virtualNodes) {
+            this.virtualNodes = virtualNodes;
+            return this;
+        }
+
+        /**
+         * Select the tenant database with {@link java.sql.Connection#setSchema(String)} (e.g. PostgreSQL) instead of {@link java.sql.Connection#setCatalog(String)} (e.g. MySQL).
+         */
+        public Builder setUseSchema(boolean useSchema) {
+            this.useSchema = useSchema;
+            return this;
+        }
+
+        /**
+         * Set the function deriving the database (or schema) name from a tenant id. Defaults to the tenant id.
+         */
+        public Builder setDatabaseNameProvider(Function<String, String> databaseNameProvider) {
+            this.databaseNameProvider = databaseNameProvider;
+            return this;
+        }
+
+        public ShardCatalog build() {
+            Objects.requireNonNull(databaseNameProvider, "Database name provider is required");
+            if (virtualNodes < 1) {
+                throw new IllegalArgumentException("Virtual nodes must be positive");
+            }
+            for (String shardId : overrides.values()) {
+                if (!shards.containsKey(shardId)) {
+                    throw new DatabaseConfigurationException("Cannot find shard " + shardId);
+                }
+            }
+            return new ShardCatalog(this);
+        }
+    }
+}
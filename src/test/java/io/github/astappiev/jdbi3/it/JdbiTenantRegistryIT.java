@@ -2,9 +2,11 @@ package io.github.astappiev.jdbi3.it;
 
 import com.zaxxer.hikari.HikariDataSource;
 import io.github.astappiev.jdbi3.multitenant.JdbiTenantRegistry;
+import io.github.astappiev.jdbi3.multitenant.ShutdownReport;
 import io.github.astappiev.jdbi3.multitenant.configuration.DatabaseConfiguration;
 import io.github.astappiev.jdbi3.multitenant.resolver.ThreadLocalTenantResolver;
 import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -15,6 +17,7 @@ import org.testcontainers.containers.MariaDBContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -94,6 +97,14 @@ public class JdbiTenantRegistryIT {
             }).init();
     }
 
+    @AfterAll
+    public static void tearDown() {
+        ShutdownReport report = JdbiTenantRegistry.getInstance().shutdown(Duration.ofSeconds(10));
+        logger.info("Shutdown report={}", report);
+        assertTrue(report.isClean());
+        JdbiTenantRegistry.releaseInstance();
+    }
+
     @Test
     void testJdbiRegistrySingleTenant() {
         JdbiTenantRegistry jdbiTenantRegistry = JdbiTenantRegistry.getInstance();
@@ -1,13 +1,24 @@
 package io.github.astappiev.jdbi3.multitenant;
 
+import io.github.astappiev.jdbi3.multitenant.admission.AdmissionController;
+import io.github.astappiev.jdbi3.multitenant.admission.TenantAdmissionException;
+import io.github.astappiev.jdbi3.multitenant.admission.TenantLimits;
+import io.github.astappiev.jdbi3.multitenant.cache.TenantQueryCache;
+import io.github.astappiev.jdbi3.multitenant.configuration.ConfigurationSnapshot;
 import io.github.astappiev.jdbi3.multitenant.configuration.DatabaseConfiguration;
 import io.github.astappiev.jdbi3.multitenant.configuration.DatabaseConfigurationException;
+import io.github.astappiev.jdbi3.multitenant.pool.PoolResizer;
 import io.github.astappiev.jdbi3.multitenant.resolver.TenantResolver;
 import io.github.astappiev.jdbi3.multitenant.resolver.ThreadLocalTenantResolver;
+import io.github.astappiev.jdbi3.multitenant.shard.ShardCatalog;
+import org.jdbi.v3.core.ConnectionException;
+import org.jdbi.v3.core.Handle;
 import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.api.parallel.Isolated;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
@@ -16,8 +27,26 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -74,6 +103,11 @@ class JdbiTenantRegistryTest {
         lenient().doReturn(mockStatement).when(mockConnection).createStatement();
     }
 
+    @AfterEach
+    void tearDownEach() {
+        JdbiTenantRegistry.releaseInstance();
+    }
+
     @Test
     void testValidations() {
         JdbiTenantRegistry.Initializer initializer = JdbiTenantRegistry.newInitializer();
@@ -152,6 +186,602 @@ class JdbiTenantRegistryTest {
         testHandle(mockConnection, 3);
     }
 
+    @Test
+    void testLazyDataSource() {
+        assertThrowsExactly(IllegalStateException.class, () -> JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .setDataSourceIdleTimeout(Duration.ofMinutes(1))
+            .init(), "Idle timeout requires lazy data sources");
+
+        JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .setLazyDataSource(true)
+            .init();
+
+        Jdbi jdbi = JdbiTenantRegistry.getInstance().getJdbi();
+        assertEquals(1, JdbiTenantRegistry.getInstance().getNumJdbiInstances());
+        verify(mockDataSourceProvider, never()).apply(any());
+
+        jdbi.useHandle(handle -> handle.select("select 1"));
+        jdbi.useHandle(handle -> handle.select("select 1"));
+        verify(mockDataSourceProvider, times(1)).apply(defaultDbConfig);
+        assertEquals(0, JdbiTenantRegistry.getInstance().releaseIdleDataSources(), "Idle timeout is not set");
+    }
+
+    @Test
+    void testReleaseIdleShardDataSource() throws Exception {
+        DatabaseConfiguration shardConfig = DatabaseConfiguration.newBuilder()
+            .setJdbcUrl("jdbc:mariadb://localhost:3306/information_schema").setUsername("shard_user").setPassword("").build();
+        DataSource shardDataSource = mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+        doReturn(mockConnection).when(shardDataSource).getConnection();
+        doReturn(shardDataSource).when(mockDataSourceProvider).apply(shardConfig);
+
+        JdbiTenantRegistry registry = JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setShardCatalog(ShardCatalog.newBuilder().addShard("shard1", shardConfig).build())
+            .setDataSourceProvider(mockDataSourceProvider)
+            .setLazyDataSource(true)
+            .setDataSourceIdleTimeout(Duration.ofMillis(10))
+            .init();
+
+        // a handle of one tenant keeps the shard pool of all its tenants
+        registry.getJdbi(TENANT_1).useHandle(handle -> handle.select("select 1"));
+        Handle handle = registry.getJdbi(TENANT_2).open();
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertEquals(0, registry.releaseIdleDataSources());
+        verify((AutoCloseable) shardDataSource, never()).close();
+
+        handle.close();
+        verify((AutoCloseable) shardDataSource, timeout(5000)).close();
+    }
+
+    @Test
+    void testShardCatalog() throws SQLException {
+        DatabaseConfiguration shardConfig = DatabaseConfiguration.newBuilder()
+            .setJdbcUrl("jdbc:mariadb://localhost:3306/information_schema").setUsername("shard_user").setPassword("").build();
+        ShardCatalog shardCatalog = ShardCatalog.newBuilder()
+            .addShard("shard1", shardConfig)
+            .setDatabaseNameProvider(tenantId -> "db_" + tenantId)
+            .build();
+
+        JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setShardCatalog(shardCatalog)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .init();
+
+        JdbiTenantRegistry.getInstance().getJdbi(TENANT_1).useHandle(handle -> handle.select("select 1"));
+        JdbiTenantRegistry.getInstance().getJdbi(TENANT_2).useHandle(handle -> handle.select("select 1"));
+
+        assertEquals(2, JdbiTenantRegistry.getInstance().getNumJdbiInstances());
+        assertEquals(1, JdbiTenantRegistry.getInstance().getNumShardDataSources());
+        verify(mockDataSourceProvider, times(1)).apply(shardConfig);
+        verify(mockConnection).setCatalog("db_" + TENANT_1);
+        verify(mockConnection).setCatalog("db_" + TENANT_2);
+        assertEquals("db_" + TENANT_1, JdbiTenantRegistry.getInstance().getDatabaseConfiguration(TENANT_1).getDatabaseName());
+    }
+
+    @Test
+    void testConfigurationSnapshot(@TempDir Path tempDir) {
+        ConfigurationSnapshot snapshot = ConfigurationSnapshot.newBuilder()
+            .setPath(tempDir.resolve("tenants.snapshot"))
+            .setSecretResolver(tenantId -> "")
+            .build();
+        DatabaseConfiguration staleTenant1DbConfig = tenant1DbConfig.toBuilder().setUsername("stale_user").build();
+        Map<String, DatabaseConfiguration> configurations = new HashMap<>();
+        configurations.put(TENANT_1, staleTenant1DbConfig);
+        configurations.put(TENANT_2, tenant2DbConfig);
+        snapshot.write(configurations);
+
+        // the central catalog is not reachable for tenant 2
+        lenient().doThrow(new IllegalStateException("Catalog is down")).when(mockDatabaseConfigurationProvider).apply(TENANT_2);
+
+        JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .setConfigurationSnapshot(snapshot)
+            .init();
+
+        JdbiTenantRegistry.getInstance().getJdbi(TENANT_2).useHandle(handle -> handle.select("select 1"));
+        verify(mockDataSourceProvider).apply(tenant2DbConfig);
+
+        JdbiTenantRegistry.getInstance().reconcileConfigurationSnapshot();
+        assertEquals(tenant1DbConfig, JdbiTenantRegistry.getInstance().getDatabaseConfiguration(TENANT_1));
+        assertEquals(tenant2DbConfig, JdbiTenantRegistry.getInstance().getDatabaseConfiguration(TENANT_2));
+        assertEquals(1, JdbiTenantRegistry.getInstance().getNumJdbiInstances());
+
+        Map<String, DatabaseConfiguration> saved = snapshot.read();
+        assertEquals(tenant1DbConfig, saved.get(TENANT_1));
+        assertEquals(tenant2DbConfig, saved.get(TENANT_2));
+    }
+
+    @Test
+    void testAccessProfile(@TempDir Path tempDir) {
+        Path profile = tempDir.resolve("access.profile");
+        JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .setAccessProfiling(true)
+            .setAccessProfilePath(profile)
+            .init();
+
+        for (int i = 0; i < 10; i++) {
+            JdbiTenantRegistry.getInstance().getJdbi(TENANT_2);
+        }
+        for (int i = 0; i < 5; i++) {
+            JdbiTenantRegistry.getInstance().getJdbi(TENANT_1);
+        }
+        JdbiTenantRegistry.getInstance().getJdbi(DEFAULT_TENANT);
+
+        assertEquals(10, JdbiTenantRegistry.getInstance().getAccessFrequency(TENANT_2));
+        assertEquals(List.of(TENANT_2, TENANT_1), JdbiTenantRegistry.getInstance().getHotTenants(2));
+        JdbiTenantRegistry.getInstance().exportAccessProfile();
+
+        // the next start knows the hot tenants before any access
+        JdbiTenantRegistry.releaseInstance();
+        JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .setAccessProfiling(true)
+            .setAccessProfilePath(profile)
+            .init();
+
+        assertEquals(0, JdbiTenantRegistry.getInstance().getNumJdbiInstances());
+        assertEquals(List.of(TENANT_2, TENANT_1, DEFAULT_TENANT), JdbiTenantRegistry.getInstance().getHotTenants(5));
+        assertEquals(2, JdbiTenantRegistry.getInstance().warmUp(2));
+        assertEquals(2, JdbiTenantRegistry.getInstance().getNumJdbiInstances());
+    }
+
+    @Test
+    void testImportAccessProfileDecaysEvenly(@TempDir Path tempDir) throws IOException {
+        Path profile = tempDir.resolve("access.profile");
+        Files.write(profile, List.of("t1=8000", "t2=8000", "t3=8000", "t4=8000", "t5=8000"), StandardCharsets.UTF_8);
+        JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .setAccessProfiling(true)
+            .setAccessProfilePath(profile)
+            .init();
+
+        long frequency = JdbiTenantRegistry.getInstance().getAccessFrequency("t1");
+        assertTrue(frequency > 0);
+        for (String tenantId : List.of("t2", "t3", "t4", "t5")) {
+            assertEquals(frequency, JdbiTenantRegistry.getInstance().getAccessFrequency(tenantId));
+        }
+    }
+
+    @Test
+    void testShutdown() throws Exception {
+        DataSource tenant1DataSource = mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+        DataSource tenant2DataSource = mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+        doReturn(mockConnection).when(tenant1DataSource).getConnection();
+        doThrow(new IllegalStateException("Pool is broken")).when((AutoCloseable) tenant2DataSource).close();
+        doReturn(tenant1DataSource).when(mockDataSourceProvider).apply(tenant1DbConfig);
+        doReturn(tenant2DataSource).when(mockDataSourceProvider).apply(tenant2DbConfig);
+
+        JdbiTenantRegistry registry = JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .setShutdownParallelism(2)
+            .init();
+
+        Jdbi tenant1Jdbi = registry.getJdbi(TENANT_1);
+        registry.getJdbi(TENANT_2);
+        Handle handle = tenant1Jdbi.open();
+        assertEquals(1, registry.getNumActiveHandles());
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Future<ShutdownReport> shutdown = executorService.submit(() -> registry.shutdown(Duration.ofSeconds(10)));
+        executorService.shutdown();
+
+        // new handles are refused while the open one is drained
+        while (!registry.isClosed()) {
+            Thread.yield();
+        }
+        assertThrowsExactly(IllegalStateException.class, () -> registry.getJdbi(TENANT_1));
+        assertThrowsExactly(ConnectionException.class, tenant1Jdbi::open);
+        assertFalse(shutdown.isDone(), "Shutdown must wait for the open handle");
+        verify((AutoCloseable) tenant1DataSource, never()).close();
+
+        handle.close();
+        ShutdownReport report = shutdown.get(10, TimeUnit.SECONDS);
+        assertEquals(0, report.getAbandonedHandles());
+        assertEquals(Set.of(TENANT_1, TENANT_2), report.getCloseTimes().keySet());
+        assertEquals(Set.of(TENANT_2), report.getFailures().keySet());
+        assertFalse(report.isClean());
+        verify((AutoCloseable) tenant1DataSource).close();
+        assertEquals(0, registry.getNumJdbiInstances());
+
+        assertTrue(registry.shutdown(Duration.ZERO).getCloseTimes().isEmpty(), "Second shutdown must have no effect");
+    }
+
+    @Test
+    void testShutdownAbandonsHandles() {
+        JdbiTenantRegistry registry = JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .init();
+
+        registry.getJdbi().open();
+        ShutdownReport report = registry.shutdown(Duration.ofMillis(50));
+        assertEquals(1, report.getAbandonedHandles());
+        assertEquals(Set.of(DEFAULT_TENANT), report.getCloseTimes().keySet());
+        assertFalse(report.isClean());
+    }
+
+    @Test
+    void testEvictDrainsHandles() throws Exception {
+        DataSource evictedDataSource = mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+        DataSource replacementDataSource = mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+        doReturn(mockConnection).when(evictedDataSource).getConnection();
+        doReturn(mockConnection).when(replacementDataSource).getConnection();
+        doReturn(evictedDataSource, replacementDataSource).when(mockDataSourceProvider).apply(tenant1DbConfig);
+
+        JdbiTenantRegistry registry = JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .init();
+
+        Jdbi evictedJdbi = registry.getJdbi(TENANT_1);
+        Handle handle = evictedJdbi.open();
+        assertTrue(registry.evictJdbi(TENANT_1));
+        assertFalse(registry.evictJdbi(TENANT_1));
+
+        verify((AutoCloseable) evictedDataSource, never()).close();
+        assertThrowsExactly(ConnectionException.class, evictedJdbi::open, "Evicted jdbi must refuse new handles");
+        assertEquals(1, registry.getNumActiveHandles());
+
+        Jdbi replacementJdbi = registry.getJdbi(TENANT_1);
+        assertNotSame(evictedJdbi, replacementJdbi);
+        replacementJdbi.open().close();
+        verify((AutoCloseable) replacementDataSource, never()).close();
+
+        handle.close();
+        verify((AutoCloseable) evictedDataSource).close();
+        assertEquals(0, registry.getNumActiveHandles());
+
+        registry.evictJdbi(TENANT_1);
+        verify((AutoCloseable) replacementDataSource).close();
+    }
+
+    @Test
+    void testEvictConcurrently() throws Exception {
+        Set<DataSource> closedDataSources = ConcurrentHashMap.newKeySet();
+        doAnswer(invocation -> {
+            DataSource dataSource = mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+            doAnswer(close -> closedDataSources.add(dataSource)).when((AutoCloseable) dataSource).close();
+            doAnswer(getConnection -> {
+                if (closedDataSources.contains(dataSource)) {
+                    throw new SQLException("Data source is closed");
+                }
+                return mockConnection;
+            }).when(dataSource).getConnection();
+            return dataSource;
+        }).when(mockDataSourceProvider).apply(tenant1DbConfig);
+
+        JdbiTenantRegistry registry = JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .init();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(executorService.submit(() -> {
+                for (int j = 0; j < 200; j++) {
+                    registry.getJdbi(TENANT_1);
+                    registry.evictJdbi(TENANT_1);
+                    registry.getJdbi(TENANT_1);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+
+        // a cached jdbi must never be left on a retired pool
+        registry.getJdbi(TENANT_1).open().close();
+        assertEquals(0, registry.getNumActiveHandles());
+    }
+
+    @Test
+    void testAdjustPoolSizes() throws Exception {
+        DataSource tenant1DataSource = mock(DataSource.class);
+        DataSource tenant2DataSource = mock(DataSource.class);
+        doReturn(mockConnection).when(tenant1DataSource).getConnection();
+        doReturn(mockConnection).when(tenant2DataSource).getConnection();
+        doReturn(tenant1DataSource).when(mockDataSourceProvider).apply(tenant1DbConfig);
+        doReturn(tenant2DataSource).when(mockDataSourceProvider).apply(tenant2DbConfig);
+        PoolResizer poolResizer = mock(PoolResizer.class);
+
+        JdbiTenantRegistry registry = JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .setPoolResizer(poolResizer)
+            .setPoolSizingInterval(Duration.ofHours(1))
+            .setMaxTotalConnections(6)
+            .init();
+
+        // 8 concurrent handles on tenant1, 1 on tenant2
+        Jdbi tenant1Jdbi = registry.getJdbi(TENANT_1);
+        List<Handle> handles = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            handles.add(tenant1Jdbi.open());
+        }
+        handles.add(registry.getJdbi(TENANT_2).open());
+        handles.forEach(Handle::close);
+
+        // recommendations are 10 and 2, scaled down to fit 6 connections
+        Map<String, Integer> sizes = registry.adjustPoolSizes();
+        assertEquals(Map.of(TENANT_1, 5, TENANT_2, 1), sizes);
+        verify(poolResizer).resize(tenant1DataSource, 5);
+        verify(poolResizer).resize(tenant2DataSource, 1);
+
+        // without demand the pools shrink to a single connection
+        assertEquals(Map.of(TENANT_1, 1), registry.adjustPoolSizes());
+        assertEquals(Map.of(), registry.adjustPoolSizes(), "Unchanged sizes must not be applied again");
+    }
+
+    @Test
+    void testAdjustReleasedLazyPoolSize() throws Exception {
+        DataSource releasedDataSource = mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+        DataSource recreatedDataSource = mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+        doReturn(mockConnection).when(releasedDataSource).getConnection();
+        doReturn(mockConnection).when(recreatedDataSource).getConnection();
+        doReturn(releasedDataSource, recreatedDataSource).when(mockDataSourceProvider).apply(tenant1DbConfig);
+        PoolResizer poolResizer = mock(PoolResizer.class);
+
+        JdbiTenantRegistry registry = JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .setLazyDataSource(true)
+            .setDataSourceIdleTimeout(Duration.ofMillis(10))
+            .setPoolResizer(poolResizer)
+            .setPoolSizingInterval(Duration.ofHours(1))
+            .init();
+
+        // an open handle keeps the pool from being released while it is resized
+        Jdbi jdbi = registry.getJdbi(TENANT_1);
+        Handle handle = jdbi.open();
+        assertEquals(Map.of(TENANT_1, 2), registry.adjustPoolSizes());
+        verify(poolResizer).resize(releasedDataSource, 2);
+        handle.close();
+        verify((AutoCloseable) releasedDataSource, timeout(5000)).close();
+
+        // the re-created pool starts with its configured size, so the same recommendation is applied again
+        handle = jdbi.open();
+        assertEquals(Map.of(TENANT_1, 2), registry.adjustPoolSizes());
+        verify(poolResizer).resize(recreatedDataSource, 2);
+        handle.close();
+    }
+
+    @Test
+    void testAdjustShardPoolSizes() throws Exception {
+        DatabaseConfiguration shard1Config = DatabaseConfiguration.newBuilder()
+            .setJdbcUrl("jdbc:mariadb://shard1:3306/information_schema").setUsername("shard_user").setPassword("").build();
+        DatabaseConfiguration shard2Config = DatabaseConfiguration.newBuilder()
+            .setJdbcUrl("jdbc:mariadb://shard2:3306/information_schema").setUsername("shard_user").setPassword("").build();
+        ShardCatalog shardCatalog = ShardCatalog.newBuilder().addShard("shard1", shard1Config).build();
+        DataSource shardDataSource = mock(DataSource.class);
+        // borrowing a connection takes longer than the wait threshold of the strategy
+        doAnswer(invocation -> {
+            TimeUnit.MILLISECONDS.sleep(20);
+            return mockConnection;
+        }).when(shardDataSource).getConnection();
+        doReturn(shardDataSource).when(mockDataSourceProvider).apply(shard1Config);
+        PoolResizer poolResizer = mock(PoolResizer.class);
+
+        JdbiTenantRegistry registry = JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setShardCatalog(shardCatalog)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .setPoolResizer(poolResizer)
+            .setPoolSizingInterval(Duration.ofHours(1))
+            .init();
+
+        // the shard is sized once for a peak of 2 waiting handles: 2 + growth step 2
+        Handle tenant1Handle = registry.getJdbi(TENANT_1).open();
+        Handle tenant2Handle = registry.getJdbi(TENANT_2).open();
+        tenant1Handle.close();
+        tenant2Handle.close();
+        assertEquals(Map.of("shard:shard1", 4), registry.adjustPoolSizes());
+        verify(poolResizer).resize(shardDataSource, 4);
+
+        // still waiting, the shard grows by one growth step
+        tenant1Handle = registry.getJdbi(TENANT_1).open();
+        tenant2Handle = registry.getJdbi(TENANT_2).open();
+        tenant1Handle.close();
+        tenant2Handle.close();
+        assertEquals(Map.of("shard:shard1", 6), registry.adjustPoolSizes());
+
+        // a cached tenant keeps using the pool it was created with when the catalog maps it elsewhere
+        shardCatalog.addShard("shard2", shard2Config);
+        shardCatalog.setOverride(TENANT_1, "shard2");
+        assertEquals(Map.of("shard:shard1", 1), registry.adjustPoolSizes());
+        verify(mockDataSourceProvider, never()).apply(shard2Config);
+    }
+
+    @Test
+    void testScope() throws Exception {
+        DataSource tenant1DataSource = mock(DataSource.class);
+        doReturn(mockConnection).when(tenant1DataSource).getConnection();
+        doReturn(tenant1DataSource).when(mockDataSourceProvider).apply(tenant1DbConfig);
+
+        JdbiTenantRegistry registry = JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .init();
+
+        Jdbi tenant1Jdbi = registry.getJdbi(TENANT_1);
+        try (TenantScope scope = registry.openScope()) {
+            Handle handle = tenant1Jdbi.withHandle(h -> h);
+            assertSame(handle, tenant1Jdbi.withHandle(h -> h), "Handle must be reused in the scope");
+            tenant1Jdbi.useHandle(h -> assertSame(handle, h));
+
+            try (TenantScope nested = registry.openScope()) {
+                assertSame(scope, nested, "Nested scope must join the open scope");
+                assertSame(handle, tenant1Jdbi.withHandle(h -> h));
+            }
+            assertFalse(handle.isClosed(), "Handle must stay open until the outer scope is closed");
+
+            registry.getJdbi(TENANT_2).useHandle(h -> assertNotSame(handle, h));
+            assertEquals(2, scope.getNumHandles());
+            assertEquals(2, registry.getNumActiveHandles());
+            verify(tenant1DataSource, times(1)).getConnection();
+        }
+        assertEquals(0, registry.getNumActiveHandles());
+
+        // without a scope each callback gets its own handle
+        assertNotSame(tenant1Jdbi.withHandle(h -> h), tenant1Jdbi.withHandle(h -> h));
+        verify(tenant1DataSource, times(3)).getConnection();
+    }
+
+    @Test
+    void testAdmissionControl() throws Exception {
+        PreparedStatement mockPreparedStatement = mock(PreparedStatement.class);
+        doReturn(mockPreparedStatement).when(mockConnection).prepareStatement(anyString(), anyInt(), anyInt());
+        AdmissionController admissionController = AdmissionController.newBuilder()
+            .setLimitsProvider(tenantId -> TENANT_1.equals(tenantId)
+                ? TenantLimits.newBuilder().setMaxConcurrentHandles(1).setQueriesPerSecond(0.001).setBurst(1).build() : null)
+            .build();
+
+        JdbiTenantRegistry registry = JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .setAdmissionController(admissionController)
+            .init();
+
+        Jdbi tenant1Jdbi = registry.getJdbi(TENANT_1);
+        try (Handle handle = tenant1Jdbi.open()) {
+            assertEquals(TenantAdmissionException.Reason.CONCURRENCY_LIMITED,
+                assertThrowsExactly(TenantAdmissionException.class, tenant1Jdbi::open).getReason());
+            assertEquals(1, registry.getNumActiveHandles(), "Rejected handle must not be counted");
+            registry.getJdbi(TENANT_2).open().close();
+
+            handle.execute("update test set value = 1");
+            assertEquals(TenantAdmissionException.Reason.RATE_LIMITED,
+                assertThrowsExactly(TenantAdmissionException.class, () -> handle.execute("update test set value = 2")).getReason());
+        }
+        assertEquals(0, admissionController.getActiveHandles(TENANT_1));
+        tenant1Jdbi.open().close();
+        assertEquals(2, admissionController.getRejections(TENANT_1));
+    }
+
+    @Test
+    void testQueryCachePurge() {
+        TenantQueryCache queryCache = TenantQueryCache.newBuilder().build();
+        JdbiTenantRegistry registry = JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(mockTenantResolver)
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider)
+            .setQueryCache(queryCache)
+            .init();
+
+        registry.getJdbi(TENANT_1);
+        queryCache.get(TENANT_1, "select 1", Map.of(), Integer.class, Set.of(), () -> List.of(1));
+        queryCache.get(TENANT_2, "select 1", Map.of(), Integer.class, Set.of(), () -> List.of(1));
+        assertSame(queryCache, registry.getQueryCache());
+        assertEquals(2, queryCache.getSize());
+
+        registry.evictJdbi(TENANT_1);
+        assertEquals(0, queryCache.getStatistics(TENANT_1).getSize(), "Evicted tenant must be purged");
+        assertEquals(1, queryCache.getStatistics(TENANT_2).getSize());
+    }
+
+    @Test
+    void testIndependentRegistries() {
+        ThreadLocalTenantResolver oltpResolver = ThreadLocalTenantResolver.newInitializer().setDefaultTenant(DEFAULT_TENANT).build();
+        ThreadLocalTenantResolver reportingResolver = ThreadLocalTenantResolver.newInitializer().setDefaultTenant(TENANT_2).build();
+        JdbiTenantRegistry.Initializer initializer = JdbiTenantRegistry.newInitializer()
+            .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+            .setDataSourceProvider(mockDataSourceProvider);
+
+        try (JdbiTenantRegistry oltp = initializer.setCurrentTenantResolver(oltpResolver).build();
+             JdbiTenantRegistry reporting = initializer.setCurrentTenantResolver(reportingResolver).build()) {
+            assertNull(JdbiTenantRegistry.getInstance(), "Built registries must not be published");
+            assertNull(ThreadLocalTenantResolver.getInstance(), "Built resolvers must not be published");
+
+            oltpResolver.setCurrentTenant(TENANT_1);
+            assertNotSame(oltp.getJdbi(), reporting.getJdbi(TENANT_1));
+            assertEquals(TENANT_2, reportingResolver.get());
+            assertEquals(1, oltp.getNumJdbiInstances());
+            assertEquals(1, reporting.getNumJdbiInstances());
+
+            oltp.checkHandle(TENANT_2);
+            assertEquals(TENANT_1, oltpResolver.get(), "Current tenant must be restored");
+            assertEquals(TENANT_2, reportingResolver.get());
+
+            assertTrue(oltp.evictJdbi(TENANT_1));
+            assertEquals(1, reporting.getNumJdbiInstances(), "Evicting must not affect another registry");
+
+            oltp.close();
+            assertFalse(reporting.isClosed());
+            assertNotNull(reporting.getJdbi());
+        }
+    }
+
+    @Test
+    void testConcurrentInit(@TempDir Path tempDir) throws Exception {
+        ConfigurationSnapshot snapshot = ConfigurationSnapshot.newBuilder()
+            .setPath(tempDir.resolve("tenants.snapshot"))
+            .setSecretResolver(tenantId -> "")
+            .build();
+        snapshot.write(Map.of(TENANT_1, tenant1DbConfig));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<JdbiTenantRegistry>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executorService.submit(() -> {
+                start.await();
+                return JdbiTenantRegistry.newInitializer()
+                    .setCurrentTenantResolver(mockTenantResolver)
+                    .setDatabaseConfigurationProvider(mockDatabaseConfigurationProvider)
+                    .setDataSourceProvider(mockDataSourceProvider)
+                    .setConfigurationSnapshot(snapshot)
+                    .init();
+            }));
+        }
+        start.countDown();
+
+        List<JdbiTenantRegistry> initialized = new ArrayList<>();
+        for (Future<JdbiTenantRegistry> future : futures) {
+            try {
+                initialized.add(future.get(10, TimeUnit.SECONDS));
+            } catch (ExecutionException e) {
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        }
+        executorService.shutdown();
+
+        assertEquals(1, initialized.size(), "Exactly one registry must be published");
+        assertSame(initialized.get(0), JdbiTenantRegistry.getInstance());
+        assertFalse(JdbiTenantRegistry.getInstance().isClosed());
+
+        // only the published registry starts its background work, a discarded one does not reconcile or persist
+        verify(mockDatabaseConfigurationProvider, timeout(5000)).apply(TENANT_1);
+        TimeUnit.MILLISECONDS.sleep(100);
+        verify(mockDatabaseConfigurationProvider, times(1)).apply(TENANT_1);
+        assertEquals(Map.of(TENANT_1, tenant1DbConfig), snapshot.read());
+    }
+
     private void testHandle(Connection mockConnection, int instances) throws SQLException {
         Jdbi jdbi = JdbiTenantRegistry.getInstance().getJdbi();
         jdbi.useHandle(handle -> handle.select("select 1"));
@@ -0,0 +1,123 @@
+package io.github.astappiev.jdbi3.multitenant.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    private static final String SERVER = "jdbc:mariadb://localhost:3306/";
+
+    @Test
+    void testValidations() {
+        assertThrowsExactly(IllegalArgumentException.class, () -> TenantLimits.newBuilder().setWeight(0).build());
+        assertThrowsExactly(IllegalArgumentException.class, () -> TenantLimits.newBuilder().setQueriesPerSecond(-1).build());
+        assertThrowsExactly(IllegalArgumentException.class, () -> AdmissionController.newBuilder().setServerCapacity(-1).build());
+        assertThrowsExactly(NullPointerException.class, () -> AdmissionController.newBuilder().setDefaultLimits(null).build());
+        assertEquals(5, TenantLimits.newBuilder().setQueriesPerSecond(4.5).build().getBurst(), "Burst must default to one second");
+    }
+
+    @Test
+    void testRateLimit() {
+        List<TenantAdmissionException> rejections = new ArrayList<>();
+        AdmissionController controller = AdmissionController.newBuilder()
+            .setLimitsProvider(tenantId -> "bulk".equals(tenantId) ? TenantLimits.newBuilder().setQueriesPerSecond(0.001).setBurst(2).build() : null)
+            .setRejectionListener(rejections::add)
+            .build();
+
+        controller.acquireQuery("bulk");
+        controller.acquireQuery("bulk");
+        TenantAdmissionException exception = assertThrowsExactly(TenantAdmissionException.class, () -> controller.acquireQuery("bulk"));
+        assertEquals(TenantAdmissionException.Reason.RATE_LIMITED, exception.getReason());
+        assertEquals("bulk", exception.getTenantId());
+        assertEquals(List.of(exception), rejections);
+        assertEquals(1, controller.getRejections("bulk"));
+        assertEquals(1, controller.getRejections(TenantAdmissionException.Reason.RATE_LIMITED));
+
+        // other tenants get the unlimited defaults
+        for (int i = 0; i < 100; i++) {
+            controller.acquireQuery("other");
+        }
+        assertEquals(0, controller.getRejections("other"));
+
+        // limits can be changed at runtime
+        controller.setLimits("bulk", TenantLimits.newBuilder().build());
+        controller.acquireQuery("bulk");
+    }
+
+    @Test
+    void testConcurrencyLimit() {
+        AdmissionController controller = AdmissionController.newBuilder()
+            .setDefaultLimits(TenantLimits.newBuilder().setMaxConcurrentHandles(2).build())
+            .build();
+
+        controller.acquireHandle("tenant", SERVER);
+        controller.acquireHandle("tenant", SERVER);
+        TenantAdmissionException exception = assertThrowsExactly(TenantAdmissionException.class, () -> controller.acquireHandle("tenant", SERVER));
+        assertEquals(TenantAdmissionException.Reason.CONCURRENCY_LIMITED, exception.getReason());
+        assertEquals(2, controller.getActiveHandles("tenant"));
+
+        controller.releaseHandle("tenant", SERVER);
+        controller.acquireHandle("tenant", SERVER);
+        assertEquals(2, controller.getActiveHandles("tenant"));
+    }
+
+    @Test
+    void testQueueTimeout() {
+        AdmissionController controller = AdmissionController.newBuilder()
+            .setServerCapacity(1)
+            .setMaxQueueWait(Duration.ofMillis(50))
+            .build();
+
+        controller.acquireHandle("tenant1", SERVER);
+        TenantAdmissionException exception = assertThrowsExactly(TenantAdmissionException.class, () -> controller.acquireHandle("tenant2", SERVER));
+        assertEquals(TenantAdmissionException.Reason.QUEUE_TIMEOUT, exception.getReason());
+        assertEquals(0, controller.getActiveHandles("tenant2"));
+        assertEquals(0, controller.getQueueLength(SERVER));
+
+        // other servers have their own capacity
+        controller.acquireHandle("tenant2", "jdbc:mariadb://otherhost:3306/");
+        controller.releaseHandle("tenant1", SERVER);
+        controller.acquireHandle("tenant2", SERVER);
+    }
+
+    @Test
+    void testFairQueuing() throws InterruptedException {
+        AdmissionController controller = AdmissionController.newBuilder()
+            .setServerCapacity(1)
+            .setMaxQueueWait(Duration.ofSeconds(10))
+            .build();
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+
+        controller.acquireHandle("holder", SERVER);
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        List<Map.Entry<String, String>> waiters = List.of(
+            Map.entry("bulk", "bulk1"), Map.entry("bulk", "bulk2"), Map.entry("bulk", "bulk3"), Map.entry("web", "web1"));
+        for (int i = 0; i < waiters.size(); i++) {
+            Map.Entry<String, String> waiter = waiters.get(i);
+            executorService.execute(() -> {
+                controller.acquireHandle(waiter.getKey(), SERVER);
+                admitted.add(waiter.getValue());
+                controller.releaseHandle(waiter.getKey(), SERVER);
+            });
+            // enqueue one after another to get a deterministic order
+            while (controller.getQueueLength(SERVER) < i + 1) {
+                Thread.yield();
+            }
+        }
+
+        controller.releaseHandle("holder", SERVER);
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(List.of("bulk1", "web1", "bulk2", "bulk3"), admitted, "A light tenant must not wait behind a heavy one");
+    }
+}
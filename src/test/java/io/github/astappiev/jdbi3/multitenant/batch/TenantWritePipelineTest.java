@@ -0,0 +1,262 @@
+package io.github.astappiev.jdbi3.multitenant.batch;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.HandleListener;
+import org.jdbi.v3.core.Handles;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.StatementException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TenantWritePipelineTest {
+
+    private static final String INSERT = "insert into events (id, payload) values (:id, :payload)";
+
+    private final Map<String, Jdbi> jdbiTenantMap = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> handlesTenantMap = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> maxConcurrentTenantMap = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        jdbiTenantMap.clear();
+        handlesTenantMap.clear();
+        maxConcurrentTenantMap.clear();
+    }
+
+    private Jdbi getJdbi(String tenantId) {
+        return jdbiTenantMap.computeIfAbsent(tenantId, id -> {
+            Jdbi jdbi = Jdbi.create("jdbc:h2:mem:batch_" + id + "_" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+            jdbi.useHandle(handle -> handle.execute("create table events (id int primary key, payload varchar(32))"));
+            AtomicInteger handles = handlesTenantMap.computeIfAbsent(id, t -> new AtomicInteger());
+            AtomicInteger open = new AtomicInteger();
+            AtomicInteger maxConcurrent = maxConcurrentTenantMap.computeIfAbsent(id, t -> new AtomicInteger());
+            jdbi.getConfig(Handles.class).addListener(new HandleListener() {
+                @Override
+                public void handleCreated(Handle handle) {
+                    handles.incrementAndGet();
+                    maxConcurrent.accumulateAndGet(open.incrementAndGet(), Math::max);
+                }
+
+                @Override
+                public void handleClosed(Handle handle) {
+                    open.decrementAndGet();
+                }
+            });
+            return jdbi;
+        });
+    }
+
+    private int count(String tenantId) {
+        return getJdbi(tenantId).withHandle(handle -> handle.createQuery("select count(*) from events").mapTo(Integer.class).one());
+    }
+
+    @Test
+    void testValidations() {
+        assertThrowsExactly(NullPointerException.class, () -> TenantWritePipeline.newBuilder().build());
+        assertThrowsExactly(IllegalArgumentException.class, () -> TenantWritePipeline.newBuilder().setJdbiProvider(this::getJdbi).setMaxBatchSize(0).build());
+        assertThrowsExactly(IllegalArgumentException.class, () -> TenantWritePipeline.newBuilder().setJdbiProvider(this::getJdbi).setMaxBufferedRecords(0).build());
+    }
+
+    @Test
+    void testBatching() throws Exception {
+        getJdbi("tenant1");
+        getJdbi("tenant2");
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        try (TenantWritePipeline pipeline = TenantWritePipeline.newBuilder()
+            .setJdbiProvider(this::getJdbi)
+            .setMaxBatchSize(50)
+            .setLinger(Duration.ofSeconds(10))
+            .build()) {
+            for (int i = 0; i < 100; i++) {
+                futures.add(pipeline.submit("tenant1", INSERT, Map.of("id", i, "payload", "event" + i)));
+                futures.add(pipeline.submit("tenant2", INSERT, Map.of("id", i, "payload", "event" + i)));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        }
+
+        for (CompletableFuture<Integer> future : futures) {
+            assertEquals(1, future.get());
+        }
+        assertEquals(100, count("tenant1"));
+        assertEquals(100, count("tenant2"));
+        // one handle to create the table, two batches of 50 records
+        assertEquals(3, handlesTenantMap.get("tenant1").get());
+        assertEquals(3, handlesTenantMap.get("tenant2").get());
+    }
+
+    @Test
+    void testLinger() throws Exception {
+        getJdbi("tenant1");
+        try (TenantWritePipeline pipeline = TenantWritePipeline.newBuilder()
+            .setJdbiProvider(this::getJdbi)
+            .setLinger(Duration.ofMillis(200))
+            .build()) {
+            CompletableFuture<Integer> first = pipeline.submit("tenant1", INSERT, Map.of("id", 1, "payload", "a"));
+            CompletableFuture<Integer> second = pipeline.submit("tenant1", INSERT, Map.of("id", 2, "payload", "b"));
+            assertEquals(1, first.get(10, TimeUnit.SECONDS));
+            assertEquals(1, second.get(10, TimeUnit.SECONDS));
+            assertEquals(0, pipeline.getNumOutstanding());
+        }
+        assertEquals(2, count("tenant1"));
+        assertEquals(2, handlesTenantMap.get("tenant1").get(), "Records within the linger time must share a batch");
+    }
+
+    @Test
+    void testInFlightBound() throws Exception {
+        getJdbi("tenant1");
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        try (TenantWritePipeline pipeline = TenantWritePipeline.newBuilder()
+            .setJdbiProvider(this::getJdbi)
+            .setMaxBatchSize(5)
+            .setMaxInFlightBatches(1)
+            .setParallelism(4)
+            .build()) {
+            for (int i = 0; i < 100; i++) {
+                futures.add(pipeline.submit("tenant1", INSERT, Map.of("id", i, "payload", "event" + i)));
+            }
+        }
+
+        assertTrue(futures.stream().allMatch(CompletableFuture::isDone), "Close must write all buffered records");
+        assertEquals(100, count("tenant1"));
+        assertEquals(1, maxConcurrentTenantMap.get("tenant1").get(), "At most one batch must be in flight");
+    }
+
+    @Test
+    void testBufferBound() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        getJdbi("tenant1").getConfig(Handles.class).addListener(new HandleListener() {
+            @Override
+            public void handleCreated(Handle handle) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        getJdbi("tenant2");
+        try (TenantWritePipeline pipeline = TenantWritePipeline.newBuilder()
+            .setJdbiProvider(this::getJdbi)
+            .setMaxBatchSize(1)
+            .setMaxInFlightBatches(1)
+            .setMaxBufferedRecords(2)
+            .build()) {
+            // one record in flight, two buffered behind it
+            List<CompletableFuture<Integer>> accepted = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                accepted.add(pipeline.submit("tenant1", INSERT, Map.of("id", i, "payload", "event" + i)));
+            }
+            CompletableFuture<Integer> rejected = pipeline.submit("tenant1", INSERT, Map.of("id", 3, "payload", "event3"));
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> rejected.get(0, TimeUnit.SECONDS));
+            assertInstanceOf(RejectedExecutionException.class, exception.getCause(), "Record over the buffer bound must fail right away");
+            assertEquals(1, pipeline.submit("tenant2", INSERT, Map.of("id", 1, "payload", "a")).get(10, TimeUnit.SECONDS),
+                "Other tenants must not be affected");
+
+            release.countDown();
+            for (CompletableFuture<Integer> future : accepted) {
+                assertEquals(1, future.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, pipeline.submit("tenant1", INSERT, Map.of("id", 4, "payload", "event4")).get(10, TimeUnit.SECONDS),
+                "Written records must free the buffer");
+        }
+        assertEquals(4, count("tenant1"));
+    }
+
+    @Test
+    void testCloseTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Jdbi jdbi = getJdbi("tenant1");
+        jdbi.getConfig(Handles.class).addListener(new HandleListener() {
+            @Override
+            public void handleCreated(Handle handle) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        TenantWritePipeline pipeline = TenantWritePipeline.newBuilder()
+            .setJdbiProvider(this::getJdbi)
+            .setMaxBatchSize(1)
+            .setMaxInFlightBatches(1)
+            .setCloseTimeout(Duration.ofMillis(100))
+            .build();
+        CompletableFuture<Integer> inFlight = pipeline.submit("tenant1", INSERT, Map.of("id", 1, "payload", "a"));
+        CompletableFuture<Integer> buffered = pipeline.submit("tenant1", INSERT, Map.of("id", 2, "payload", "b"));
+        pipeline.close();
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> buffered.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, exception.getCause(), "Buffered record must fail after the close timeout");
+        release.countDown();
+        assertEquals(1, inFlight.get(10, TimeUnit.SECONDS), "In-flight batch must still complete");
+    }
+
+    @Test
+    void testSubmitWhileClosing() throws Exception {
+        getJdbi("tenant1");
+        getJdbi("tenant2");
+        TenantWritePipeline pipeline = TenantWritePipeline.newBuilder()
+            .setJdbiProvider(this::getJdbi)
+            .setLinger(Duration.ofSeconds(10))
+            .build();
+        List<CompletableFuture<Integer>> futures = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        AtomicInteger ids = new AtomicInteger();
+        for (int t = 0; t < 4; t++) {
+            String tenantId = "tenant" + (t % 2 + 1);
+            executorService.execute(() -> {
+                for (int i = 0; i < 500; i++) {
+                    int id = ids.incrementAndGet();
+                    futures.add(pipeline.submit(tenantId, INSERT, Map.of("id", id, "payload", "event" + id)));
+                }
+            });
+        }
+        pipeline.close();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+
+        // every record is either written or refused, none stays buffered
+        CompletableFuture.allOf(futures.stream().map(future -> future.exceptionally(e -> -1)).toArray(CompletableFuture[]::new))
+            .get(10, TimeUnit.SECONDS);
+        long written = futures.stream().filter(future -> !future.isCompletedExceptionally()).count();
+        assertEquals(written, count("tenant1") + count("tenant2"));
+    }
+
+    @Test
+    void testFailure() throws Exception {
+        getJdbi("tenant1");
+        TenantWritePipeline pipeline = TenantWritePipeline.newBuilder()
+            .setJdbiProvider(this::getJdbi)
+            .setLinger(Duration.ofSeconds(10))
+            .build();
+        CompletableFuture<Integer> first = pipeline.submit("tenant1", INSERT, Map.of("id", 1, "payload", "a"));
+        CompletableFuture<Integer> duplicate = pipeline.submit("tenant1", INSERT, Map.of("id", 1, "payload", "b"));
+        pipeline.close();
+
+        ExecutionException exception = assertThrows(ExecutionException.class, duplicate::get);
+        assertInstanceOf(StatementException.class, exception.getCause());
+        assertTrue(first.isCompletedExceptionally(), "Batch must fail as a whole");
+        assertEquals(0, count("tenant1"));
+
+        ExecutionException closed = assertThrows(ExecutionException.class, () -> pipeline.submit("tenant1", INSERT, Map.of()).get());
+        assertInstanceOf(IllegalStateException.class, closed.getCause());
+    }
+}
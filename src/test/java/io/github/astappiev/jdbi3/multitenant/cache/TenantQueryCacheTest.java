@@ -0,0 +1,137 @@
+package io.github.astappiev.jdbi3.multitenant.cache;
+
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TenantQueryCacheTest {
+
+    private static final String SQL = "select name from plans where id = :id";
+
+    private static List<String> get(TenantQueryCache cache, String tenantId, int id, AtomicInteger loads, String... tags) {
+        return cache.get(tenantId, SQL, Map.of("id", id), String.class, Set.of(tags), () -> {
+            loads.incrementAndGet();
+            return List.of(tenantId + "-" + id);
+        });
+    }
+
+    @Test
+    void testValidations() {
+        assertThrowsExactly(IllegalArgumentException.class, () -> TenantQueryCache.newBuilder().setMaxEntries(0).build());
+        assertThrowsExactly(IllegalArgumentException.class, () -> TenantQueryCache.newBuilder().setTimeToLive(Duration.ZERO).build());
+        assertThrowsExactly(NullPointerException.class, () -> TenantQueryCache.newBuilder().setTimeToLive(null).build());
+    }
+
+    @Test
+    void testHitsAndMisses() {
+        TenantQueryCache cache = TenantQueryCache.newBuilder().build();
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(List.of("tenant1-1"), get(cache, "tenant1", 1, loads));
+        assertEquals(List.of("tenant1-1"), get(cache, "tenant1", 1, loads));
+        assertEquals(List.of("tenant1-2"), get(cache, "tenant1", 2, loads), "Parameters must be part of the key");
+        assertEquals(List.of("tenant2-1"), get(cache, "tenant2", 1, loads), "Tenant must be part of the key");
+        assertEquals(3, loads.get());
+
+        CacheStatistics statistics = cache.getStatistics("tenant1");
+        assertEquals(1, statistics.getHits());
+        assertEquals(2, statistics.getMisses());
+        assertEquals(2, statistics.getSize());
+        assertEquals(1.0 / 3, statistics.getHitRate(), 0.001);
+        assertEquals(Set.of("tenant1", "tenant2"), cache.getStatistics().keySet());
+        assertThrows(UnsupportedOperationException.class, () -> get(cache, "tenant1", 1, loads).add("x"));
+    }
+
+    @Test
+    void testSizeBounds() {
+        TenantQueryCache cache = TenantQueryCache.newBuilder().setMaxEntriesPerTenant(3).setMaxEntries(4).build();
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int id = 0; id < 4; id++) {
+            get(cache, "tenant1", id, loads);
+        }
+        assertEquals(3, cache.getStatistics("tenant1").getSize(), "Tenant must be bounded");
+        assertEquals(1, cache.getStatistics("tenant1").getEvictions());
+        get(cache, "tenant1", 0, loads);
+        assertEquals(5, loads.get(), "Least recently used entry must be evicted first");
+
+        get(cache, "tenant2", 0, loads);
+        get(cache, "tenant2", 1, loads);
+        assertEquals(4, cache.getSize(), "Cache must be bounded globally");
+        assertEquals(2, cache.getStatistics("tenant2").getSize());
+        assertEquals(2, cache.getStatistics("tenant1").getSize(), "Largest tenant must be evicted");
+    }
+
+    @Test
+    void testTimeToLive() throws InterruptedException {
+        TenantQueryCache cache = TenantQueryCache.newBuilder().setTimeToLive(Duration.ofMillis(50)).build();
+        AtomicInteger loads = new AtomicInteger();
+
+        get(cache, "tenant1", 1, loads);
+        get(cache, "tenant1", 1, loads);
+        assertEquals(1, loads.get());
+
+        Thread.sleep(100);
+        get(cache, "tenant1", 1, loads);
+        assertEquals(2, loads.get(), "Expired entry must be loaded again");
+        assertEquals(1, cache.getStatistics("tenant1").getEvictions());
+    }
+
+    @Test
+    void testInvalidation() {
+        TenantQueryCache cache = TenantQueryCache.newBuilder().build();
+        AtomicInteger loads = new AtomicInteger();
+
+        get(cache, "tenant1", 1, loads, "plans");
+        get(cache, "tenant1", 2, loads, "settings");
+        get(cache, "tenant2", 1, loads, "plans");
+
+        cache.invalidateTag("tenant1", "plans");
+        assertEquals(1, cache.getStatistics("tenant1").getSize());
+        assertEquals(1, cache.getStatistics("tenant2").getSize());
+
+        cache.invalidateTag("plans");
+        assertEquals(0, cache.getStatistics("tenant2").getSize());
+
+        cache.invalidateTenant("tenant1");
+        assertEquals(0, cache.getSize());
+
+        // results loaded while their tag is invalidated are not cached
+        cache.get("tenant1", SQL, Map.of("id", 3), String.class, Set.of("plans"), () -> {
+            cache.invalidateTag("plans");
+            return List.of("stale");
+        });
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void testQuery() {
+        TenantQueryCache cache = TenantQueryCache.newBuilder().build();
+        Jdbi jdbi = Jdbi.create("jdbc:h2:mem:cache_tenant1;DB_CLOSE_DELAY=-1");
+        jdbi.useHandle(handle -> {
+            handle.execute("create table plans (id int, name varchar(32))");
+            handle.execute("insert into plans values (1, 'free'), (2, 'pro')");
+        });
+
+        assertEquals(List.of("pro"), cache.query("tenant1", jdbi, SQL, Map.of("id", 2), String.class, query -> query.mapTo(String.class), "plans"));
+        jdbi.useHandle(handle -> handle.execute("update plans set name = 'business' where id = 2"));
+        assertEquals(List.of("pro"), cache.query("tenant1", jdbi, SQL, Map.of("id", 2), String.class, query -> query.mapTo(String.class), "plans"));
+
+        cache.invalidateTag("plans");
+        assertEquals(List.of("business"), cache.query("tenant1", jdbi, SQL, Map.of("id", 2), String.class, query -> query.mapTo(String.class), "plans"));
+
+        // duplicate tags are allowed
+        assertEquals(List.of("free"), cache.query("tenant1", jdbi, SQL, Map.of("id", 1), String.class, query -> query.mapTo(String.class), "plans", "plans"));
+
+        // another row type of the same query is cached separately
+        assertEquals(List.of(2), cache.query("tenant1", jdbi, "select id from plans where id = :id", Map.of("id", 2), Integer.class, query -> query.mapTo(Integer.class)));
+        assertEquals(List.of("2"), cache.query("tenant1", jdbi, "select id from plans where id = :id", Map.of("id", 2), String.class, query -> query.mapTo(String.class)));
+    }
+}
@@ -0,0 +1,140 @@
+package io.github.astappiev.jdbi3.multitenant.configuration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigurationSnapshotTest {
+
+    private static final String PASSWORD = "very-secret-password";
+
+    @TempDir
+    Path tempDir;
+
+    private static Map<String, DatabaseConfiguration> configurations() {
+        Map<String, DatabaseConfiguration> configurations = new LinkedHashMap<>();
+        configurations.put("tenant1", DatabaseConfiguration.newBuilder()
+            .setDriverClassName("org.mariadb.jdbc.Driver")
+            .setJdbcUrl("jdbc:mariadb://localhost:3306/tenant1?charset=utf8")
+            .setUsername("tenant1_user")
+            .setPassword(PASSWORD)
+            .setMinPoolSize(2)
+            .setMaxPoolSize(8)
+            .build());
+        configurations.put("tenant2", DatabaseConfiguration.newBuilder()
+            .setJdbcUrl("jdbc:mariadb://localhost:3306/tenant2")
+            .setUsername("tenant2_user")
+            .setPassword(PASSWORD)
+            .setServerId("primary")
+            .build());
+        return configurations;
+    }
+
+    private static SecretKey newKey() throws Exception {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        return generator.generateKey();
+    }
+
+    @Test
+    void testValidations() {
+        assertThrowsExactly(NullPointerException.class, () -> ConfigurationSnapshot.newBuilder().build());
+        assertThrowsExactly(IllegalStateException.class, () -> ConfigurationSnapshot.newBuilder().setPath(tempDir.resolve("snapshot")).build());
+    }
+
+    @Test
+    void testMissingSnapshot() {
+        ConfigurationSnapshot snapshot = ConfigurationSnapshot.newBuilder()
+            .setPath(tempDir.resolve("missing"))
+            .setSecretResolver(tenantId -> PASSWORD)
+            .build();
+        assertTrue(snapshot.read().isEmpty());
+    }
+
+    @Test
+    void testEncryptedRoundTrip() throws Exception {
+        Path path = tempDir.resolve("snapshot.bin");
+        SecretKey key = newKey();
+        ConfigurationSnapshot snapshot = ConfigurationSnapshot.newBuilder().setPath(path).setSecretKey(key).build();
+        snapshot.write(configurations());
+
+        assertFalse(new String(Files.readAllBytes(path), StandardCharsets.ISO_8859_1).contains(PASSWORD), "Password must not be stored in plain text");
+        Map<String, DatabaseConfiguration> read = snapshot.read();
+        assertEquals(configurations(), read);
+        assertEquals("tenant1", read.get("tenant1").getDatabaseName());
+        assertEquals(8, read.get("tenant1").getMaxPoolSize());
+        assertNull(read.get("tenant2").getMaxPoolSize());
+        assertEquals("primary", read.get("tenant2").getServerId());
+        assertEquals("jdbc:mariadb://localhost:3306/", read.get("tenant1").getServerId());
+
+        ConfigurationSnapshot otherKey = ConfigurationSnapshot.newBuilder().setPath(path).setSecretKey(newKey()).build();
+        assertThrowsExactly(DatabaseConfigurationException.class, otherKey::read);
+    }
+
+    @Test
+    void testSecretByReference() throws Exception {
+        Path path = tempDir.resolve("snapshot.bin");
+        ConfigurationSnapshot snapshot = ConfigurationSnapshot.newBuilder()
+            .setPath(path)
+            .setSecretResolver(tenantId -> PASSWORD)
+            .build();
+        snapshot.write(configurations());
+
+        assertFalse(new String(Files.readAllBytes(path), StandardCharsets.ISO_8859_1).contains(PASSWORD), "Password must not be stored");
+        assertEquals(configurations(), snapshot.read());
+
+        ConfigurationSnapshot encrypted = ConfigurationSnapshot.newBuilder().setPath(path).setSecretKey(newKey()).build();
+        assertThrowsExactly(DatabaseConfigurationException.class, encrypted::read, "Secret mode must match");
+    }
+
+    @Test
+    void testUnresolvableSecret() {
+        Path path = tempDir.resolve("snapshot.bin");
+        ConfigurationSnapshot.newBuilder().setPath(path).setSecretResolver(tenantId -> PASSWORD).build().write(configurations());
+
+        ConfigurationSnapshot missingSecret = ConfigurationSnapshot.newBuilder()
+            .setPath(path)
+            .setSecretResolver(tenantId -> "tenant1".equals(tenantId) ? PASSWORD : null)
+            .build();
+        assertEquals(Set.of("tenant1"), missingSecret.read().keySet(), "Tenant without a secret must be skipped");
+
+        ConfigurationSnapshot failingResolver = ConfigurationSnapshot.newBuilder()
+            .setPath(path)
+            .setSecretResolver(tenantId -> {
+                if ("tenant1".equals(tenantId)) {
+                    throw new IllegalStateException("Unknown tenant");
+                }
+                return PASSWORD;
+            })
+            .build();
+        assertEquals(Set.of("tenant2"), failingResolver.read().keySet(), "Tenant with a failing secret resolver must be skipped");
+    }
+
+    @Test
+    void testCorruptSnapshot() throws Exception {
+        Path path = tempDir.resolve("snapshot.bin");
+        ConfigurationSnapshot snapshot = ConfigurationSnapshot.newBuilder()
+            .setPath(path)
+            .setSecretResolver(tenantId -> PASSWORD)
+            .build();
+        snapshot.write(configurations());
+
+        byte[] content = Files.readAllBytes(path);
+        content[content.length / 2] ^= 0x7f;
+        Files.write(path, content);
+        assertThrowsExactly(DatabaseConfigurationException.class, snapshot::read);
+
+        Files.write(path, new byte[]{1, 2, 3});
+        assertThrowsExactly(DatabaseConfigurationException.class, snapshot::read);
+    }
+}
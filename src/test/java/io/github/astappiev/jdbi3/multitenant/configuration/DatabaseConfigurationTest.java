@@ -79,4 +79,60 @@ class DatabaseConfigurationTest {
         assertEquals(JDBC_URL, confSimpler.getJdbcUrl());
         assertEquals("test", confSimpler.getDatabaseName());
     }
+
+    @Test
+    void testToBuilder() {
+        DatabaseConfiguration conf = DatabaseConfiguration.newBuilder()
+                .setDriverClassName(DRIVER)
+                .setJdbcUrl("jdbc:mariadb://localhost:3306/other?charset=utf8")
+                .setUsername(USERNAME)
+                .setPassword(PASSWORD)
+                .build();
+
+        assertEquals(conf, conf.toBuilder().build());
+
+        DatabaseConfiguration copy = conf.toBuilder().setDatabaseName("test").build();
+        assertEquals(DRIVER, copy.getDriverClassName());
+        assertEquals("jdbc:mariadb://localhost:3306/test?charset=utf8", copy.getJdbcUrl());
+        assertEquals("test", copy.getDatabaseName());
+        assertEquals(USERNAME, copy.getUsername());
+        assertEquals(PASSWORD, copy.getPassword());
+    }
+
+    @Test
+    void testPoolSizeHints() {
+        DatabaseConfiguration.Builder builder = DatabaseConfiguration.newBuilder()
+                .setJdbcUrl(JDBC_URL)
+                .setUsername(USERNAME)
+                .setPassword(PASSWORD);
+
+        DatabaseConfiguration conf = builder.build();
+        assertNull(conf.getMinPoolSize());
+        assertNull(conf.getMaxPoolSize());
+
+        conf = builder.setMinPoolSize(1).setMaxPoolSize(4).build();
+        assertEquals(1, conf.getMinPoolSize());
+        assertEquals(4, conf.getMaxPoolSize());
+        assertEquals(conf, conf.toBuilder().build());
+
+        assertThrowsExactly(IllegalArgumentException.class, () -> builder.setMinPoolSize(5).build());
+        assertThrowsExactly(IllegalArgumentException.class, () -> builder.setMinPoolSize(-1).build());
+        assertThrowsExactly(IllegalArgumentException.class, () -> builder.setMinPoolSize(null).setMaxPoolSize(0).build());
+    }
+
+    @Test
+    void testServerId() {
+        DatabaseConfiguration.Builder builder = DatabaseConfiguration.newBuilder()
+                .setJdbcUrl("jdbc:mariadb://localhost:3306/test?charset=utf8")
+                .setUsername(USERNAME)
+                .setPassword(PASSWORD);
+
+        assertEquals("jdbc:mariadb://localhost:3306/", builder.build().getServerId());
+        assertEquals("jdbc:h2:mem:test", builder.copy().setJdbcUrl("jdbc:h2:mem:test").build().getServerId(), "URL without a '/' must not share a server id");
+
+        DatabaseConfiguration conf = builder.setServerId("primary").build();
+        assertEquals("primary", conf.getServerId());
+        assertEquals(conf, conf.toBuilder().build());
+        assertNotEquals(conf, builder.setServerId(null).build());
+    }
 }
@@ -0,0 +1,97 @@
+package io.github.astappiev.jdbi3.multitenant.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class LazyDataSourceTest {
+
+    private DataSource mockDataSource;
+    private AtomicInteger created;
+    private LazyDataSource lazyDataSource;
+
+    @BeforeEach
+    void setUpEach() throws SQLException {
+        mockDataSource = mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+        lenient().doAnswer(invocation -> mock(Connection.class)).when(mockDataSource).getConnection();
+        created = new AtomicInteger();
+        lazyDataSource = new LazyDataSource(() -> {
+            created.incrementAndGet();
+            return mockDataSource;
+        });
+    }
+
+    @Test
+    void testCreatedOnFirstConnection() throws SQLException {
+        assertFalse(lazyDataSource.isCreated());
+        assertEquals(0, created.get());
+
+        try (Connection connection = lazyDataSource.getConnection()) {
+            assertTrue(lazyDataSource.isCreated());
+            assertEquals(connection, connection);
+            verify(mockDataSource).getConnection();
+        }
+
+        lazyDataSource.getConnection().close();
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    void testConnectionIsNotWrapped() throws SQLException {
+        Connection connection = mock(Connection.class);
+        doReturn(connection).when(mockDataSource).getConnection();
+        assertSame(connection, lazyDataSource.getConnection());
+    }
+
+    @Test
+    void testCreatedOnceConcurrently() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            futures.add(executorService.submit(() -> {
+                lazyDataSource.getConnection().close();
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    void testReleaseIfIdle() throws Exception {
+        AtomicInteger activeConnections = new AtomicInteger();
+        assertFalse(lazyDataSource.releaseIfIdle(Duration.ZERO, activeConnections::get), "Nothing to release before first use");
+
+        activeConnections.incrementAndGet();
+        Connection connection = lazyDataSource.getConnection();
+        assertFalse(lazyDataSource.releaseIfIdle(Duration.ZERO, activeConnections::get), "Must not release while a connection is in use");
+        assertTrue(lazyDataSource.isCreated());
+        assertFalse(lazyDataSource.releaseIfIdle(Duration.ofHours(1), activeConnections::get), "Must not release before idle timeout");
+        connection.close();
+        activeConnections.decrementAndGet();
+
+        assertTrue(lazyDataSource.releaseIfIdle(Duration.ZERO, activeConnections::get));
+        assertFalse(lazyDataSource.isCreated());
+        verify((AutoCloseable) mockDataSource).close();
+
+        lazyDataSource.getConnection().close();
+        assertEquals(2, created.get(), "Released data source must be re-created");
+    }
+}
@@ -0,0 +1,212 @@
+package io.github.astappiev.jdbi3.multitenant.export;
+
+import io.github.astappiev.jdbi3.multitenant.JdbiTenantRegistry;
+import io.github.astappiev.jdbi3.multitenant.configuration.DatabaseConfiguration;
+import io.github.astappiev.jdbi3.multitenant.resolver.TenantResolver;
+import org.h2.jdbcx.JdbcDataSource;
+import org.jdbi.v3.core.result.ResultIterable;
+import org.jdbi.v3.core.result.ResultIterator;
+import org.jdbi.v3.core.statement.StatementContext;
+import org.jdbi.v3.core.statement.StatementException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Isolated;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Isolated
+class TenantRowPublisherTest {
+
+    private static final Map<String, Integer> ROWS = Map.of("export1", 10, "export2", 0, "export3", 25);
+    private static final List<String> TENANTS = List.of("export1", "export2", "export3");
+
+    private JdbiTenantRegistry registry;
+    private ExecutorService executorService;
+
+    @BeforeEach
+    void setUp() {
+        registry = JdbiTenantRegistry.newInitializer()
+            .setCurrentTenantResolver(new TenantResolver() {
+                @Override
+                public String get() {
+                    return getDefaultTenant();
+                }
+
+                @Override
+                public String getDefaultTenant() {
+                    return "export1";
+                }
+            })
+            .setDatabaseConfigurationProvider(tenantId -> DatabaseConfiguration.newBuilder()
+                .setJdbcUrl("jdbc:h2:mem:" + tenantId + ";DB_CLOSE_DELAY=-1").setUsername("sa").setPassword("").build())
+            .setDataSourceProvider(configuration -> {
+                JdbcDataSource dataSource = new JdbcDataSource();
+                dataSource.setURL(configuration.getJdbcUrl());
+                dataSource.setUser(configuration.getUsername());
+                dataSource.setPassword(configuration.getPassword());
+                return dataSource;
+            })
+            .init();
+
+        ROWS.forEach((tenantId, rows) -> registry.getJdbi(tenantId).useHandle(handle -> {
+            handle.execute("create table if not exists items (id int)");
+            handle.execute("delete from items");
+            for (int i = 0; i < rows; i++) {
+                handle.execute("insert into items values (?)", i);
+            }
+        }));
+        executorService = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        JdbiTenantRegistry.releaseInstance();
+    }
+
+    private TenantRowPublisher<Integer> export(String sql, int maxOpenCursors) {
+        return registry.export(TENANTS, handle -> handle.createQuery(sql).mapTo(Integer.class),
+            ExportOptions.newBuilder().setFetchSize(5).setMaxOpenCursors(maxOpenCursors).setExecutor(executorService).build());
+    }
+
+    @Test
+    void testValidations() {
+        assertThrowsExactly(NullPointerException.class, () -> ExportOptions.newBuilder().build(), "Executor is required");
+        assertThrowsExactly(IllegalArgumentException.class, () -> ExportOptions.newBuilder().setExecutor(executorService).setFetchSize(0).build());
+    }
+
+    @Test
+    void testExport() throws InterruptedException {
+        List<Integer> openHandles = Collections.synchronizedList(new ArrayList<>());
+        TestSubscriber subscriber = new TestSubscriber() {
+            @Override
+            public void onNext(TenantRow<Integer> item) {
+                super.onNext(item);
+                openHandles.add(registry.getNumActiveHandles());
+                subscription.request(1);
+            }
+        };
+        export("select id from items order by id", 2).subscribe(subscriber);
+        subscriber.subscription.request(1);
+
+        assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+        assertNull(subscriber.error);
+        assertEquals(Map.of("export1", 10L, "export3", 25L),
+            subscriber.rows.stream().collect(Collectors.groupingBy(TenantRow::getTenantId, Collectors.counting())));
+        assertTrue(openHandles.stream().allMatch(handles -> handles <= 2), "At most 2 cursors must be open");
+        assertEquals(0, registry.getNumActiveHandles(), "All handles must be closed");
+
+        // rows are taken round-robin from the open cursors
+        assertEquals(List.of("export1", "export3", "export1", "export3"),
+            subscriber.rows.subList(0, 4).stream().map(TenantRow::getTenantId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testBackpressure() throws InterruptedException {
+        TestSubscriber subscriber = new TestSubscriber();
+        export("select id from items", 4).subscribe(subscriber);
+        subscriber.subscription.request(3);
+
+        while (subscriber.rows.size() < 3) {
+            Thread.yield();
+        }
+        Thread.sleep(100);
+        assertEquals(3, subscriber.rows.size(), "No more rows than requested must be read");
+        assertEquals(2, registry.getNumActiveHandles(), "Empty tenant must be closed right away");
+
+        subscriber.subscription.cancel();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, registry.getNumActiveHandles(), "Cancel must close the handles");
+        assertEquals(1, subscriber.terminated.getCount(), "Cancel must not signal the subscriber");
+    }
+
+    @Test
+    void testError() throws InterruptedException {
+        TestSubscriber subscriber = new TestSubscriber();
+        export("select id from missing_table", 2).subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+        assertInstanceOf(StatementException.class, subscriber.error);
+        assertEquals(0, registry.getNumActiveHandles());
+
+        TestSubscriber invalid = new TestSubscriber();
+        export("select id from items", 2).subscribe(invalid);
+        invalid.subscription.request(0);
+        assertTrue(invalid.terminated.await(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, invalid.error);
+    }
+
+    @Test
+    void testFetchError() throws InterruptedException {
+        TestSubscriber subscriber = new TestSubscriber();
+        registry.export(TENANTS, handle -> ResultIterable.of(new ResultIterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                throw new IllegalStateException("Cannot fetch the first row");
+            }
+
+            @Override
+            public Integer next() {
+                throw new NoSuchElementException();
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public StatementContext getContext() {
+                return null;
+            }
+        }), ExportOptions.newBuilder().setExecutor(executorService).build()).subscribe(subscriber);
+        subscriber.subscription.request(1);
+
+        assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, subscriber.error);
+        assertEquals(0, registry.getNumActiveHandles(), "Handle must be closed when the first fetch fails");
+    }
+
+    private static class TestSubscriber implements Flow.Subscriber<TenantRow<Integer>> {
+        final List<TenantRow<Integer>> rows = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch terminated = new CountDownLatch(1);
+        volatile Flow.Subscription subscription;
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(TenantRow<Integer> item) {
+            rows.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            terminated.countDown();
+        }
+    }
+}
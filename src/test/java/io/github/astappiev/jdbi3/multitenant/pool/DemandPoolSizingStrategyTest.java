@@ -0,0 +1,48 @@
+package io.github.astappiev.jdbi3.multitenant.pool;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DemandPoolSizingStrategyTest {
+
+    private static PoolStatistics.Builder statistics(int peakActiveHandles, Duration averageWait, int currentSize) {
+        return PoolStatistics.newBuilder()
+            .setTenantId("tenant")
+            .setPeakActiveHandles(peakActiveHandles)
+            .setAverageWait(averageWait)
+            .setMaxWait(averageWait)
+            .setCurrentSize(currentSize);
+    }
+
+    @Test
+    void testValidations() {
+        assertThrowsExactly(IllegalArgumentException.class, () -> DemandPoolSizingStrategy.newBuilder().setHeadroom(0.5).build());
+        assertThrowsExactly(IllegalArgumentException.class, () -> DemandPoolSizingStrategy.newBuilder().setMinSize(5).setMaxSize(4).build());
+        assertThrowsExactly(NullPointerException.class, () -> DemandPoolSizingStrategy.newBuilder().setWaitThreshold(null).build());
+    }
+
+    @Test
+    void testPeakWithHeadroom() {
+        DemandPoolSizingStrategy strategy = DemandPoolSizingStrategy.newBuilder().build();
+        assertEquals(10, strategy.recommend(statistics(8, Duration.ZERO, 4).build()));
+        assertEquals(0, strategy.recommend(statistics(0, Duration.ZERO, 4).build()), "Idle pool must shrink");
+        assertEquals(20, strategy.recommend(statistics(100, Duration.ZERO, 4).build()), "Default maximum must apply");
+    }
+
+    @Test
+    void testGrowOnWait() {
+        DemandPoolSizingStrategy strategy = DemandPoolSizingStrategy.newBuilder().build();
+        assertEquals(6, strategy.recommend(statistics(4, Duration.ofMillis(50), 4).build()));
+        assertEquals(8, strategy.recommend(statistics(4, Duration.ofMillis(50), 6).build()), "Pool must grow from its current size");
+    }
+
+    @Test
+    void testPoolSizeHints() {
+        DemandPoolSizingStrategy strategy = DemandPoolSizingStrategy.newBuilder().build();
+        assertEquals(2, strategy.recommend(statistics(0, Duration.ZERO, 4).setMinPoolSize(2).build()));
+        assertEquals(6, strategy.recommend(statistics(100, Duration.ZERO, 4).setMaxPoolSize(6).build()));
+    }
+}
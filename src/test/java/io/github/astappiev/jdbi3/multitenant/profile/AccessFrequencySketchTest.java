@@ -0,0 +1,89 @@
+package io.github.astappiev.jdbi3.multitenant.profile;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessFrequencySketchTest {
+
+    @Test
+    void testValidations() {
+        assertThrowsExactly(IllegalArgumentException.class, () -> new AccessFrequencySketch(0, 4, 10));
+        assertThrowsExactly(IllegalArgumentException.class, () -> new AccessFrequencySketch(16, 0, 10));
+        assertThrowsExactly(IllegalArgumentException.class, () -> new AccessFrequencySketch(16, 4, 0));
+    }
+
+    @Test
+    void testEstimate() {
+        AccessFrequencySketch sketch = new AccessFrequencySketch(1024, 4, Long.MAX_VALUE);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("hot");
+        }
+        for (int i = 0; i < 200; i++) {
+            sketch.increment("cold" + i);
+        }
+
+        assertTrue(sketch.estimate("hot") >= 100, "Estimate must never be less than the real count");
+        assertTrue(sketch.estimate("hot") < 110, "Estimate must be close to the real count");
+        assertTrue(sketch.estimate("cold1") < sketch.estimate("hot"));
+        assertEquals(0, sketch.estimate("unknown"), "Unknown key in a sparse sketch must be 0");
+    }
+
+    @Test
+    void testDecay() {
+        AccessFrequencySketch sketch = new AccessFrequencySketch(64, 4, 100);
+        for (int i = 0; i < 99; i++) {
+            sketch.increment("tenant");
+        }
+        assertEquals(99, sketch.estimate("tenant"));
+
+        sketch.increment("tenant");
+        assertEquals(50, sketch.estimate("tenant"), "Counters must be halved after sample size increments");
+
+        sketch.decay();
+        assertEquals(25, sketch.estimate("tenant"));
+    }
+
+    @Test
+    void testSeed() {
+        AccessFrequencySketch sketch = new AccessFrequencySketch(1024, 4, 10_000);
+        Map<String, Long> counts = new HashMap<>();
+        for (int i = 0; i < 5; i++) {
+            counts.put("tenant" + i, 8000L);
+        }
+        counts.put("cold", 4000L);
+        sketch.seed(counts);
+
+        // 44000 seeded accesses are scaled into half of the sample size, without decaying any entry more than another
+        for (int i = 0; i < 5; i++) {
+            assertEquals(909, sketch.estimate("tenant" + i));
+        }
+        assertEquals(455, sketch.estimate("cold"));
+
+        sketch.seed(Map.of("small", 10L, "ignored", -1L));
+        assertEquals(10, sketch.estimate("small"), "Small profiles must not be scaled");
+        assertEquals(0, sketch.estimate("ignored"));
+    }
+
+    @Test
+    void testConcurrentIncrements() throws InterruptedException {
+        AccessFrequencySketch sketch = new AccessFrequencySketch(1024, 4, Long.MAX_VALUE);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executorService.execute(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    sketch.increment("tenant");
+                }
+            });
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(4000, sketch.estimate("tenant"));
+    }
+}
@@ -0,0 +1,146 @@
+package io.github.astappiev.jdbi3.multitenant.resolver;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestTenantResolverTest {
+
+    private static final String DEFAULT_TENANT = "default";
+    private static final Map<String, String> HOSTS = Map.of("acme.example.com", "acme", "globex.example.com", "globex");
+    private static final Map<String, String> API_KEYS = Map.of("key-1", "initech");
+
+    private final AtomicInteger hostLookups = new AtomicInteger();
+    private final AtomicInteger apiKeyLookups = new AtomicInteger();
+
+    private RequestTenantResolver.Builder<Map<String, String>> newBuilder() {
+        return RequestTenantResolver.<Map<String, String>>newBuilder()
+            .setDefaultTenant(DEFAULT_TENANT)
+            .addExtractor("apiKey", headers -> headers.get("X-Api-Key"), key -> {
+                apiKeyLookups.incrementAndGet();
+                return API_KEYS.get(key);
+            })
+            .addExtractor("host", headers -> headers.get("Host"), host -> {
+                hostLookups.incrementAndGet();
+                return HOSTS.get(host);
+            });
+    }
+
+    @Test
+    void testValidations() {
+        assertThrowsExactly(NullPointerException.class, () -> RequestTenantResolver.newBuilder().build(), "Default tenant is required");
+        assertThrowsExactly(IllegalStateException.class, () -> RequestTenantResolver.newBuilder().setDefaultTenant(DEFAULT_TENANT).build());
+        assertThrowsExactly(IllegalArgumentException.class, () -> newBuilder().setMaxCacheSize(0).build());
+    }
+
+    @Test
+    void testExtractorChain() {
+        RequestTenantResolver<Map<String, String>> resolver = newBuilder().build();
+
+        assertEquals("acme", resolver.resolve(Map.of("Host", "acme.example.com")));
+        assertEquals("initech", resolver.resolve(Map.of("Host", "acme.example.com", "X-Api-Key", "key-1")), "First extractor must win");
+        assertEquals("globex", resolver.resolve(Map.of("Host", "globex.example.com", "X-Api-Key", "unknown")), "Unknown key must fall through");
+        assertEquals(DEFAULT_TENANT, resolver.resolve(Map.of()));
+        assertEquals(DEFAULT_TENANT, resolver.resolve(Map.of("Host", "unknown.example.com")));
+    }
+
+    @Test
+    void testMemoization() throws InterruptedException {
+        RequestTenantResolver<Map<String, String>> resolver = newBuilder()
+            .setCacheTtl(Duration.ofMillis(100))
+            .setNegativeCacheTtl(Duration.ofMinutes(1))
+            .build();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("acme", resolver.resolve(Map.of("Host", "acme.example.com")));
+            assertEquals(DEFAULT_TENANT, resolver.resolve(Map.of("Host", "unknown.example.com")));
+        }
+        assertEquals(2, hostLookups.get(), "Known and unknown keys must be memoized");
+        assertEquals(18, resolver.getCacheHits());
+        assertEquals(2, resolver.getCacheMisses());
+
+        Thread.sleep(150);
+        resolver.resolve(Map.of("Host", "acme.example.com"));
+        resolver.resolve(Map.of("Host", "unknown.example.com"));
+        assertEquals(3, hostLookups.get(), "Expired key must be looked up again");
+
+        resolver.invalidate("host", "unknown.example.com");
+        resolver.resolve(Map.of("Host", "unknown.example.com"));
+        assertEquals(4, hostLookups.get());
+    }
+
+    @Test
+    void testConcurrentMisses() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        RequestTenantResolver<Map<String, String>> resolver = RequestTenantResolver.<Map<String, String>>newBuilder()
+            .setDefaultTenant(DEFAULT_TENANT)
+            .addExtractor("host", headers -> headers.get("Host"), host -> {
+                lookups.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return HOSTS.get(host);
+            })
+            .build();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executorService.submit(() -> resolver.resolve(Map.of("Host", "acme.example.com"))));
+        }
+        // give all threads time to miss the cache while the first lookup is blocked
+        Thread.sleep(200);
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("acme", result.get(10, TimeUnit.SECONDS));
+        }
+        executorService.shutdown();
+
+        assertEquals(1, lookups.get(), "Concurrent misses of a key must share one lookup");
+        assertEquals(1, resolver.getCacheMisses());
+        assertEquals(7, resolver.getCacheHits());
+    }
+
+    @Test
+    void testCacheBound() {
+        RequestTenantResolver<Map<String, String>> resolver = newBuilder().setMaxCacheSize(10).build();
+        for (int i = 0; i < 100; i++) {
+            resolver.resolve(Map.of("Host", "tenant" + i + ".example.com"));
+            assertTrue(resolver.getCacheSize() <= 10);
+        }
+    }
+
+    @Test
+    void testCurrentTenantIsPerThread() throws Exception {
+        RequestTenantResolver<Map<String, String>> resolver = newBuilder().build();
+        assertEquals(DEFAULT_TENANT, resolver.get());
+        assertEquals("acme", resolver.setCurrentContext(Map.of("Host", "acme.example.com")));
+        assertEquals("acme", resolver.get());
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Future<String> other = executorService.submit(() -> {
+            resolver.setCurrentContext(Map.of("Host", "globex.example.com"));
+            return resolver.get();
+        });
+        assertEquals("globex", other.get(10, TimeUnit.SECONDS));
+        assertEquals("acme", resolver.get());
+        executorService.shutdown();
+
+        resolver.reset();
+        assertEquals(DEFAULT_TENANT, resolver.get());
+    }
+}
@@ -12,6 +12,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.fail;
 
 @Isolated
@@ -38,6 +39,20 @@ class ThreadLocalTenantResolverTest {
         }
     }
 
+    @Test
+    void testIndependentResolvers() {
+        ThreadLocalTenantResolver resolver = ThreadLocalTenantResolver.newInitializer().setDefaultTenant(TEST_DEFAULT_TENANT).init();
+        ThreadLocalTenantResolver other = ThreadLocalTenantResolver.newInitializer().setDefaultTenant("OTHER_DEFAULT_TENANT").build();
+        assertSame(resolver, ThreadLocalTenantResolver.getInstance(), "Built resolver must not replace the default one");
+
+        other.setCurrentTenant("otherTenant");
+        assertEquals("otherTenant", other.get());
+        assertEquals(TEST_DEFAULT_TENANT, resolver.get());
+
+        other.reset();
+        assertEquals("OTHER_DEFAULT_TENANT", other.get());
+    }
+
     @Test
     void testResolverIsPerThread() throws InterruptedException {
         ThreadLocalTenantResolver resolver = ThreadLocalTenantResolver.newInitializer().setDefaultTenant(TEST_DEFAULT_TENANT).init();
@@ -0,0 +1,90 @@
+package io.github.astappiev.jdbi3.multitenant.shard;
+
+import io.github.astappiev.jdbi3.multitenant.configuration.DatabaseConfiguration;
+import io.github.astappiev.jdbi3.multitenant.configuration.DatabaseConfigurationException;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardCatalogTest {
+
+    private static DatabaseConfiguration shard(String host) {
+        return DatabaseConfiguration.newBuilder()
+            .setJdbcUrl("jdbc:mariadb://" + host + ":3306/information_schema?charset=utf8")
+            .setUsername("tenants")
+            .setPassword("secret")
+            .build();
+    }
+
+    @Test
+    void testValidations() {
+        assertThrowsExactly(DatabaseConfigurationException.class, () -> ShardCatalog.newBuilder().build().getShardId("tenant1"));
+        assertThrowsExactly(DatabaseConfigurationException.class, () -> ShardCatalog.newBuilder()
+            .addShard("s1", shard("db1"))
+            .setOverride("tenant1", "unknown")
+            .build());
+        assertThrowsExactly(IllegalArgumentException.class, () -> ShardCatalog.newBuilder().setVirtualNodes(0).build());
+    }
+
+    @Test
+    void testTenantConfiguration() {
+        ShardCatalog catalog = ShardCatalog.newBuilder()
+            .addShard("s1", shard("db1"))
+            .setDatabaseNameProvider(tenantId -> "tenant_" + tenantId)
+            .build();
+
+        DatabaseConfiguration configuration = catalog.getTenantConfiguration("acme");
+        assertEquals("s1", catalog.getShardId("acme"));
+        assertEquals("tenant_acme", configuration.getDatabaseName());
+        assertEquals("jdbc:mariadb://db1:3306/tenant_acme?charset=utf8", configuration.getJdbcUrl());
+        assertEquals("tenants", configuration.getUsername());
+        assertEquals("secret", configuration.getPassword());
+    }
+
+    @Test
+    void testOverride() {
+        ShardCatalog catalog = ShardCatalog.newBuilder()
+            .addShard("s1", shard("db1"))
+            .addShard("s2", shard("db2"))
+            .setOverride("acme", "s1")
+            .build();
+
+        assertEquals("s1", catalog.getShardId("acme"));
+        catalog.setOverride("acme", "s2");
+        assertEquals("s2", catalog.getShardId("acme"));
+        assertThrowsExactly(DatabaseConfigurationException.class, () -> catalog.setOverride("acme", "s3"));
+    }
+
+    @Test
+    void testAddShardMovesOnlyToNewShard() {
+        ShardCatalog catalog = ShardCatalog.newBuilder()
+            .addShard("s1", shard("db1"))
+            .addShard("s2", shard("db2"))
+            .addShard("s3", shard("db3"))
+            .build();
+
+        int tenants = 3000;
+        Map<String, String> before = new HashMap<>();
+        Map<String, Integer> distribution = new HashMap<>();
+        for (int i = 0; i < tenants; i++) {
+            String shardId = catalog.getShardId("tenant" + i);
+            before.put("tenant" + i, shardId);
+            distribution.merge(shardId, 1, Integer::sum);
+        }
+        distribution.values().forEach(count -> assertTrue(count > tenants / 6, "Distribution must be reasonably even: " + distribution));
+
+        catalog.addShard("s4", shard("db4"));
+        int moved = 0;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            String shardId = catalog.getShardId(entry.getKey());
+            if (!shardId.equals(entry.getValue())) {
+                assertEquals("s4", shardId, "Tenants must only move to the new shard");
+                moved++;
+            }
+        }
+        assertTrue(moved > 0 && moved < tenants * 0.4, "About a quarter of tenants must move, moved=" + moved);
+    }
+}